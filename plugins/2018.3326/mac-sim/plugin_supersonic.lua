@@ -15,6 +15,11 @@ local lib = Library:new{ name="plugin.supersonic", publisherId="com.coronalabs",
 --    supersonic.init()
 --    
 
+-- Ad unit type constants
+lib.OFFER_WALL = 1
+lib.INTERSTITIAL = 2
+lib.REWARDED_VIDEO = 3
+
 local function showWarning(functionName)
     print( functionName .. " WARNING: The Supersonic plugin is only supported on Android & iOS devices. Please build for device")
 end
@@ -35,6 +40,30 @@ function lib.show()
     showWarning("supersonic.show()")
 end
 
+function lib.getPlacementInfo()
+    showWarning("supersonic.getPlacementInfo()")
+end
+
+function lib.isPlacementCapped()
+    showWarning("supersonic.isPlacementCapped()")
+end
+
+function lib.getStatus()
+    showWarning("supersonic.getStatus()")
+end
+
+function lib.getMetrics()
+    showWarning("supersonic.getMetrics()")
+end
+
+function lib.dumpTrace()
+    showWarning("supersonic.dumpTrace()")
+end
+
+function lib.setEventFilter()
+    showWarning("supersonic.setEventFilter()")
+end
+
 function lib.hide()
     showWarning("supersonic.hide()")
 end
@@ -0,0 +1,16 @@
+//
+//  Activity.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package android.app;
+
+/**
+ * Stub so {@code plugin.supersonic.AdBackend} compiles on a plain JVM.
+ */
+public class Activity {
+}
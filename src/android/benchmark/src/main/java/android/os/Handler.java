@@ -0,0 +1,48 @@
+//
+//  Handler.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package android.os;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stub so the plugin's Android-independent sources run on a plain JVM. Runnables run on the looper's thread.
+ */
+public class Handler {
+    private final Looper fLooper;
+    private final ConcurrentHashMap<Runnable, ScheduledFuture<?>> fPending = new ConcurrentHashMap<>();
+
+    public Handler(Looper looper) {
+        fLooper = looper;
+    }
+
+    public boolean post(Runnable runnable) {
+        return postDelayed(runnable, 0);
+    }
+
+    public boolean postDelayed(final Runnable runnable, long delayMillis) {
+        fPending.put(runnable, fLooper.executor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                fPending.remove(runnable);
+                runnable.run();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS));
+        return true;
+    }
+
+    public void removeCallbacks(Runnable runnable) {
+        ScheduledFuture<?> future = fPending.remove(runnable);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+//
+//  Looper.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package android.os;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Stub so the plugin's Android-independent sources run on a plain JVM. The main looper is a single daemon thread.
+ */
+public final class Looper {
+    private static final Looper sMainLooper = new Looper();
+
+    private volatile ScheduledExecutorService fExecutor;
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return sMainLooper;
+    }
+
+    ScheduledExecutorService executor() {
+        if (fExecutor == null) {
+            synchronized (this) {
+                if (fExecutor == null) {
+                    fExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "main");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return fExecutor;
+    }
+}
@@ -0,0 +1,23 @@
+//
+//  Log.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package android.util;
+
+/**
+ * Stub so the plugin's Android-independent sources run on a plain JVM. Messages go to stderr.
+ */
+public final class Log {
+    private Log() {
+    }
+
+    public static int i(String tag, String message) {
+        System.err.println(tag + ": " + message);
+        return 0;
+    }
+}
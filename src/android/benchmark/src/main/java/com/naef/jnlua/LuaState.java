@@ -0,0 +1,146 @@
+//
+//  LuaState.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package com.naef.jnlua;
+
+/**
+ * Stub of the JNLua state for JVM benchmarks.
+ * <p>
+ * Keeps a value stack in preallocated arrays, just enough to follow the pushes and field assignments
+ * the plugin makes. Tables are not materialized and nothing is allocated, so allocation rates
+ * reported by the GC profiler belong to the plugin code being measured.
+ */
+public class LuaState {
+    public static final int REGISTRYINDEX = -10000;
+
+    private static final int STACK_SIZE = 64;
+
+    private final LuaType[] fTypes = new LuaType[STACK_SIZE];
+    private final Object[] fRefs = new Object[STACK_SIZE];
+    private final double[] fNumbers = new double[STACK_SIZE];
+    private int fTop;
+    private int fLastRef;
+
+    // number of setField calls, consumed by benchmarks so the work can't be eliminated
+    public long fieldCount;
+
+    private int absIndex(int index) {
+        return index > 0 ? index - 1 : fTop + index;
+    }
+
+    private void push(LuaType type, Object ref, double number) {
+        fTypes[fTop] = type;
+        fRefs[fTop] = ref;
+        fNumbers[fTop] = number;
+        fTop++;
+    }
+
+    public int getTop() {
+        return fTop;
+    }
+
+    public void setTop(int index) {
+        fTop = index;
+    }
+
+    public void pop(int count) {
+        fTop -= count;
+    }
+
+    public LuaType type(int index) {
+        return fTypes[absIndex(index)];
+    }
+
+    public String typeName(int index) {
+        return type(index).name().toLowerCase();
+    }
+
+    public boolean isNoneOrNil(int index) {
+        int i = absIndex(index);
+        return i < 0 || i >= fTop || fTypes[i] == LuaType.NIL;
+    }
+
+    public String toString(int index) {
+        return (String) fRefs[absIndex(index)];
+    }
+
+    public int toInteger(int index) {
+        return (int) fNumbers[absIndex(index)];
+    }
+
+    public double toNumber(int index) {
+        return fNumbers[absIndex(index)];
+    }
+
+    public boolean toBoolean(int index) {
+        return fNumbers[absIndex(index)] != 0;
+    }
+
+    public void newTable() {
+        push(LuaType.TABLE, null, 0);
+    }
+
+    public void newTable(int arrayCount, int recordCount) {
+        push(LuaType.TABLE, null, 0);
+    }
+
+    public void pushNil() {
+        push(LuaType.NIL, null, 0);
+    }
+
+    public void pushBoolean(boolean value) {
+        push(LuaType.BOOLEAN, null, value ? 1 : 0);
+    }
+
+    public void pushNumber(double value) {
+        push(LuaType.NUMBER, null, value);
+    }
+
+    public void pushInteger(int value) {
+        push(LuaType.NUMBER, null, value);
+    }
+
+    public void pushString(String value) {
+        push(LuaType.STRING, value, 0);
+    }
+
+    public void pushValue(int index) {
+        int i = absIndex(index);
+        push(fTypes[i], fRefs[i], fNumbers[i]);
+    }
+
+    public void setField(int index, String key) {
+        // the table stays, the value is consumed
+        fieldCount++;
+        fTop--;
+    }
+
+    public void rawSet(int index, int key) {
+        fieldCount++;
+        fTop--;
+    }
+
+    public void getField(int index, String key) {
+        // tables are not materialized, every field reads as nil
+        push(LuaType.NIL, null, 0);
+    }
+
+    public void rawGet(int index, int key) {
+        // only used for registry references, which all refer to tables
+        push(LuaType.TABLE, null, 0);
+    }
+
+    public int ref(int index) {
+        fTop--;
+        return ++fLastRef;
+    }
+
+    public void unref(int index, int reference) {
+    }
+}
@@ -0,0 +1,17 @@
+//
+//  LuaType.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package com.naef.jnlua;
+
+/**
+ * Stub of the JNLua type enum, same constants as the real one.
+ */
+public enum LuaType {
+    NIL, BOOLEAN, LIGHTUSERDATA, NUMBER, STRING, TABLE, FUNCTION, USERDATA, THREAD
+}
@@ -0,0 +1,93 @@
+//
+//  AdTypeResolutionBenchmark.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Resolution of the adUnitType argument of load/show/isLoaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdTypeResolutionBenchmark {
+    private final AdUnitRegistry fRegistry = new AdUnitRegistry();
+    private final LuaState fByName = new LuaState();
+    private final LuaState fByMixedCaseName = new LuaState();
+    private final LuaState fByConstant = new LuaState();
+
+    @Setup
+    public void setUp() {
+        AvailabilityState.TransitionListener listener = new AvailabilityState.TransitionListener() {
+            @Override
+            public void onAvailabilityTransition(AdType type, boolean ready) {
+            }
+
+            @Override
+            public void onAvailabilityUnknown(AdType type) {
+            }
+        };
+        // resolution never calls into the SDK
+        AdBackend backend = null;
+        fRegistry.register(new OfferWallHandler(backend, listener));
+        fRegistry.register(new InterstitialHandler(backend, listener));
+        fRegistry.register(new RewardedVideoHandler(backend, listener));
+
+        fByName.pushString("rewardedVideo");
+        fByMixedCaseName.pushString("RewardedVideo");
+        fByConstant.pushInteger(AdType.REWARDED_VIDEO.luaConstant);
+    }
+
+    @Benchmark
+    public AdUnitHandler registryByName() {
+        return fRegistry.resolve(fByName, 1);
+    }
+
+    @Benchmark
+    public AdUnitHandler registryByMixedCaseName() {
+        return fRegistry.resolve(fByMixedCaseName, 1);
+    }
+
+    @Benchmark
+    public AdUnitHandler registryByConstant() {
+        return fRegistry.resolve(fByConstant, 1);
+    }
+
+    // the equalsIgnoreCase chain the Lua functions used before the registry
+    @Benchmark
+    public AdType legacyEqualsIgnoreCaseChain() {
+        String adUnitType = fByName.toString(1);
+
+        if (adUnitType.equalsIgnoreCase("offerWall")) {
+            return AdType.OFFER_WALL;
+        } else if (adUnitType.equalsIgnoreCase("interstitial")) {
+            return AdType.INTERSTITIAL;
+        } else if (adUnitType.equalsIgnoreCase("rewardedVideo")) {
+            return AdType.REWARDED_VIDEO;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,201 @@
+//
+//  EventPathBenchmark.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * SDK callback to Lua event path: event construction, queueing and marshalling into an event table.
+ * <p>
+ * The legacy* benchmarks reproduce the original HashMap based path as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventPathBenchmark {
+    private static final int BURST = 64;
+
+    private final AdEventPool fPool = new AdEventPool();
+    private final EventQueue fQueue = new EventQueue(256);
+    private final LuaState fLuaState = new LuaState();
+    private final LuaEventTables fTables = new LuaEventTables();
+
+    // pool and queue shared by the threads of the "mpsc" group
+    @State(Scope.Group)
+    public static class SharedQueue {
+        final AdEventPool pool = new AdEventPool();
+        final EventQueue queue = new EventQueue(256);
+    }
+
+    // --- construction ---
+
+    @Benchmark
+    public AdEvent pooledEventConstruction() {
+        AdEvent event = fPool.obtain().set(AdPhase.FAILED, AdType.INTERSTITIAL, true, "noFill");
+        fPool.recycle(event);
+        return event;
+    }
+
+    @Benchmark
+    public HashMap<String, Object> legacyEventConstruction() {
+        HashMap<String, Object> event = new HashMap<>();
+        event.put("phase", "failed");
+        event.put("type", "interstitial");
+        event.put("isError", true);
+        event.put("response", "noFill");
+        return event;
+    }
+
+    // --- marshalling ---
+
+    @Benchmark
+    public long marshalling() {
+        AdEvent event = fPool.obtain().set(AdPhase.FAILED, AdType.INTERSTITIAL, true, "noFill");
+        LuaEventWriter.write(fLuaState, event);
+        fLuaState.pop(1);
+        fPool.recycle(event);
+        return fLuaState.fieldCount;
+    }
+
+    // options.reuseEventTables: the prebuilt table of the type and phase, only the changing fields are written
+    @Benchmark
+    public long reusedTableMarshalling() {
+        AdEvent event = fPool.obtain().set(AdPhase.FAILED, AdType.INTERSTITIAL, true, "noFill");
+        fTables.push(fLuaState, event);
+        fLuaState.pop(1);
+        fPool.recycle(event);
+        return fLuaState.fieldCount;
+    }
+
+    @Benchmark
+    public long legacyMarshalling() {
+        HashMap<String, Object> event = legacyEventConstruction();
+        LuaState L = fLuaState;
+
+        L.newTable(0, 7);
+        L.pushString("adsRequest");
+        L.setField(-2, "name");
+        boolean hasErrorKey = false;
+
+        for (String key : event.keySet()) {
+            pushValue(L, event.get(key));
+            L.setField(-2, key);
+
+            if (!hasErrorKey) {
+                hasErrorKey = key.equals("isError");
+            }
+        }
+
+        if (!hasErrorKey) {
+            L.pushBoolean(false);
+            L.setField(-2, "isError");
+        }
+
+        L.pushString("supersonic");
+        L.setField(-2, "provider");
+        L.pop(1);
+
+        return L.fieldCount;
+    }
+
+    // equivalent of CoronaLua.pushValue for the value types used by events
+    private static void pushValue(LuaState L, Object value) {
+        if (value instanceof Boolean) {
+            L.pushBoolean((Boolean) value);
+        } else {
+            L.pushString(String.valueOf(value));
+        }
+    }
+
+    // --- single event, callback to Lua ---
+
+    @Benchmark
+    public long singleEventLatency() {
+        AdEvent event = fPool.obtain().set(AdPhase.LOADED, AdType.REWARDED_VIDEO, false, null);
+        fQueue.offer(event);
+
+        AdEvent drained = fQueue.poll();
+        LuaEventWriter.write(fLuaState, drained);
+        fLuaState.pop(1);
+        fPool.recycle(drained);
+
+        return fLuaState.fieldCount;
+    }
+
+    // --- burst of events drained in one frame ---
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(BURST)
+    public long burstThroughput() {
+        for (int i = 0; i < BURST; i++) {
+            fQueue.offer(fPool.obtain().set(AdPhase.CLICKED, AdType.INTERSTITIAL, false, null));
+        }
+
+        AdEvent event;
+        while ((event = fQueue.poll()) != null) {
+            LuaEventWriter.write(fLuaState, event);
+            fLuaState.pop(1);
+            fPool.recycle(event);
+        }
+
+        return fLuaState.fieldCount;
+    }
+
+    // --- three SDK threads producing, the Lua thread consuming ---
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(3)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean mpscProducer(SharedQueue shared) {
+        AdEvent event = shared.pool.obtain().set(AdPhase.LOADED, AdType.OFFER_WALL, false, null);
+        if (!shared.queue.offer(event)) {
+            shared.pool.recycle(event);
+            return false;
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void mpscConsumer(SharedQueue shared, Blackhole blackhole) {
+        AdEvent event = shared.queue.poll();
+        if (event != null) {
+            blackhole.consume(event.phase);
+            shared.pool.recycle(event);
+        }
+    }
+}
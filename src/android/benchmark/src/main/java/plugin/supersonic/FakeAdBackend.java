@@ -0,0 +1,453 @@
+//
+//  FakeAdBackend.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.app.Activity;
+
+import com.ironsource.mediationsdk.IronSource;
+import com.ironsource.mediationsdk.logger.IronSourceError;
+import com.ironsource.mediationsdk.model.InterstitialPlacement;
+import com.ironsource.mediationsdk.model.Placement;
+import com.ironsource.mediationsdk.sdk.InterstitialListener;
+import com.ironsource.mediationsdk.sdk.OfferwallListener;
+import com.ironsource.mediationsdk.sdk.RewardedVideoListener;
+
+/**
+ * Scripted stand-in for the IronSource SDK.
+ * <p>
+ * Answers loads and shows like the SDK does, with the callback latency, fill rate and error codes of a {@link Script}.
+ * Callbacks are fired from a pool of "SDK" threads, so the listener classes see the same concurrency as on a device.
+ * {@link #fireRandomCallback(Random)} fires a single callback on the calling thread, for load generators that
+ * drive the listeners from their own threads.
+ */
+final class FakeAdBackend implements AdBackend {
+    private static final Placement PLACEMENT = new Placement(1, "DefaultRewardedVideo", "Coins", 10, null);
+
+    /**
+     * Timing and outcome of the fake SDK's callbacks.
+     */
+    static final class Script {
+        int threads = 4;
+        long minLatencyMillis = 5;
+        long maxLatencyMillis = 50;
+        double fillRate = 0.8;
+        double clickRate = 0.1;
+        // reported by failed loads, picked at random
+        int[] errorCodes = {
+                IronSourceError.ERROR_CODE_NO_ADS_TO_SHOW,
+                IronSourceError.ERROR_NO_INTERNET_CONNECTION,
+                IronSourceError.ERROR_CODE_GENERIC,
+        };
+
+        Script threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        Script latency(long minMillis, long maxMillis) {
+            this.minLatencyMillis = minMillis;
+            this.maxLatencyMillis = maxMillis;
+            return this;
+        }
+
+        Script fillRate(double fillRate) {
+            this.fillRate = fillRate;
+            return this;
+        }
+
+        Script clickRate(double clickRate) {
+            this.clickRate = clickRate;
+            return this;
+        }
+
+        Script errorCodes(int... errorCodes) {
+            this.errorCodes = errorCodes;
+            return this;
+        }
+    }
+
+    private final Script fScript;
+    private final ScheduledExecutorService fSdkThreads;
+    private final Random fRandom = new Random();
+
+    private volatile OfferwallListener fOfferwallListener;
+    private volatile InterstitialListener fInterstitialListener;
+    private volatile RewardedVideoListener fRewardedVideoListener;
+
+    private volatile boolean fOfferwallAvailable;
+    private volatile boolean fInterstitialReady;
+    private volatile boolean fRewardedVideoAvailable;
+
+    // every call made by the plugin, and every callback fired
+    final AtomicLong sdkCalls = new AtomicLong();
+    final AtomicLong callbacks = new AtomicLong();
+
+    FakeAdBackend(Script script) {
+        fScript = script;
+        fSdkThreads = Executors.newScheduledThreadPool(script.threads, new NamedThreadFactory("fake-sdk", Thread.NORM_PRIORITY));
+    }
+
+    void shutdown() {
+        fSdkThreads.shutdownNow();
+    }
+
+    // -------------------------------------------------------
+    // scripted outcomes
+    // -------------------------------------------------------
+
+    private long latency() {
+        long range = fScript.maxLatencyMillis - fScript.minLatencyMillis;
+        return fScript.minLatencyMillis + (range > 0 ? (long) (nextDouble() * range) : 0);
+    }
+
+    private boolean fills() {
+        return nextDouble() < fScript.fillRate;
+    }
+
+    private IronSourceError error() {
+        int[] codes = fScript.errorCodes;
+        int code = codes[(int) (nextDouble() * codes.length)];
+        return new IronSourceError(code, "fake error " + code);
+    }
+
+    private double nextDouble() {
+        synchronized (fRandom) {
+            return fRandom.nextDouble();
+        }
+    }
+
+    // Runs a callback on an SDK thread after the scripted latency
+    private void later(long delayMillis, Runnable callback) {
+        fSdkThreads.schedule(callback, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // -------------------------------------------------------
+    // AdBackend
+    // -------------------------------------------------------
+
+    @Override
+    public void configure(String pluginVersion, String coronaBuild, boolean clientSideCallbacks) {
+        sdkCalls.incrementAndGet();
+    }
+
+    @Override
+    public void setUserId(String userId) {
+        sdkCalls.incrementAndGet();
+    }
+
+    @Override
+    public void setDynamicUserId(String userId) {
+        sdkCalls.incrementAndGet();
+    }
+
+    @Override
+    public void setConsent(boolean consent) {
+        sdkCalls.incrementAndGet();
+    }
+
+    @Override
+    public void setOfferwallListener(OfferwallListener listener) {
+        sdkCalls.incrementAndGet();
+        fOfferwallListener = listener;
+    }
+
+    @Override
+    public void setInterstitialListener(InterstitialListener listener) {
+        sdkCalls.incrementAndGet();
+        fInterstitialListener = listener;
+    }
+
+    @Override
+    public void setRewardedVideoListener(RewardedVideoListener listener) {
+        sdkCalls.incrementAndGet();
+        fRewardedVideoListener = listener;
+    }
+
+    @Override
+    public void init(Activity activity, String appKey, IronSource.AD_UNIT[] adUnits) {
+        sdkCalls.incrementAndGet();
+
+        // the SDK reports the availability of the automatically loaded units once initialized
+        later(latency(), new Runnable() {
+            @Override
+            public void run() {
+                setRewardedVideoAvailable(fills());
+            }
+        });
+        later(latency(), new Runnable() {
+            @Override
+            public void run() {
+                setOfferwallAvailable(fills());
+            }
+        });
+    }
+
+    @Override
+    public void validateIntegration(Activity activity) {
+        sdkCalls.incrementAndGet();
+    }
+
+    @Override
+    public void onPause(Activity activity) {
+        sdkCalls.incrementAndGet();
+    }
+
+    @Override
+    public void onResume(Activity activity) {
+        sdkCalls.incrementAndGet();
+    }
+
+    @Override
+    public boolean isOfferwallAvailable() {
+        sdkCalls.incrementAndGet();
+        return fOfferwallAvailable;
+    }
+
+    @Override
+    public void showOfferwall() {
+        sdkCalls.incrementAndGet();
+
+        if (!fOfferwallAvailable) {
+            later(latency(), new Runnable() {
+                @Override
+                public void run() {
+                    OfferwallListener listener = fOfferwallListener;
+                    if (listener != null) {
+                        callbacks.incrementAndGet();
+                        listener.onOfferwallShowFailed(new IronSourceError(IronSourceError.ERROR_CODE_NO_ADS_TO_SHOW, "fake: no offers"));
+                    }
+                }
+            });
+            return;
+        }
+
+        later(latency(), new Runnable() {
+            @Override
+            public void run() {
+                OfferwallListener listener = fOfferwallListener;
+                if (listener != null) {
+                    callbacks.addAndGet(3);
+                    listener.onOfferwallOpened();
+                    listener.onOfferwallAdCredited(100, 100, false);
+                    listener.onOfferwallClosed();
+                }
+                setOfferwallAvailable(fills());
+            }
+        });
+    }
+
+    @Override
+    public boolean isInterstitialReady() {
+        sdkCalls.incrementAndGet();
+        return fInterstitialReady;
+    }
+
+    @Override
+    public void loadInterstitial() {
+        sdkCalls.incrementAndGet();
+
+        later(latency(), new Runnable() {
+            @Override
+            public void run() {
+                InterstitialListener listener = fInterstitialListener;
+                if (listener == null) {
+                    return;
+                }
+
+                callbacks.incrementAndGet();
+                if (fills()) {
+                    fInterstitialReady = true;
+                    listener.onInterstitialAdReady();
+                } else {
+                    fInterstitialReady = false;
+                    listener.onInterstitialAdLoadFailed(error());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void showInterstitial(String placementId) {
+        sdkCalls.incrementAndGet();
+        final boolean ready = fInterstitialReady;
+        fInterstitialReady = false;
+
+        later(latency(), new Runnable() {
+            @Override
+            public void run() {
+                InterstitialListener listener = fInterstitialListener;
+                if (listener == null) {
+                    return;
+                }
+
+                if (!ready) {
+                    callbacks.incrementAndGet();
+                    listener.onInterstitialAdShowFailed(new IronSourceError(IronSourceError.ERROR_CODE_NO_ADS_TO_SHOW, "fake: not ready"));
+                    return;
+                }
+
+                callbacks.addAndGet(2);
+                listener.onInterstitialAdOpened();
+                listener.onInterstitialAdShowSucceeded();
+                if (nextDouble() < fScript.clickRate) {
+                    callbacks.incrementAndGet();
+                    listener.onInterstitialAdClicked();
+                }
+                callbacks.incrementAndGet();
+                listener.onInterstitialAdClosed();
+            }
+        });
+    }
+
+    @Override
+    public InterstitialPlacement getInterstitialPlacementInfo(String placementId) {
+        sdkCalls.incrementAndGet();
+        return new InterstitialPlacement(2, placementId, null);
+    }
+
+    @Override
+    public boolean isInterstitialPlacementCapped(String placementId) {
+        sdkCalls.incrementAndGet();
+        return false;
+    }
+
+    @Override
+    public boolean isRewardedVideoAvailable() {
+        sdkCalls.incrementAndGet();
+        return fRewardedVideoAvailable;
+    }
+
+    @Override
+    public void showRewardedVideo(String placementId) {
+        sdkCalls.incrementAndGet();
+
+        if (!fRewardedVideoAvailable) {
+            later(latency(), new Runnable() {
+                @Override
+                public void run() {
+                    RewardedVideoListener listener = fRewardedVideoListener;
+                    if (listener != null) {
+                        callbacks.incrementAndGet();
+                        listener.onRewardedVideoAdShowFailed(new IronSourceError(IronSourceError.ERROR_CODE_NO_ADS_TO_SHOW, "fake: not available"));
+                    }
+                }
+            });
+            return;
+        }
+
+        setRewardedVideoAvailable(false);
+        later(latency(), new Runnable() {
+            @Override
+            public void run() {
+                RewardedVideoListener listener = fRewardedVideoListener;
+                if (listener == null) {
+                    return;
+                }
+
+                callbacks.addAndGet(5);
+                listener.onRewardedVideoAdOpened();
+                listener.onRewardedVideoAdStarted();
+                listener.onRewardedVideoAdEnded();
+                listener.onRewardedVideoAdRewarded(PLACEMENT);
+                listener.onRewardedVideoAdClosed();
+
+                // the SDK loads the next video by itself
+                later(latency(), new Runnable() {
+                    @Override
+                    public void run() {
+                        setRewardedVideoAvailable(fills());
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public Placement getRewardedVideoPlacementInfo(String placementId) {
+        sdkCalls.incrementAndGet();
+        return new Placement(1, placementId, PLACEMENT.getRewardName(), PLACEMENT.getRewardAmount(), null);
+    }
+
+    @Override
+    public boolean isRewardedVideoPlacementCapped(String placementId) {
+        sdkCalls.incrementAndGet();
+        return false;
+    }
+
+    private void setRewardedVideoAvailable(boolean available) {
+        fRewardedVideoAvailable = available;
+        RewardedVideoListener listener = fRewardedVideoListener;
+        if (listener != null) {
+            callbacks.incrementAndGet();
+            listener.onRewardedVideoAvailabilityChanged(available);
+        }
+    }
+
+    private void setOfferwallAvailable(boolean available) {
+        fOfferwallAvailable = available;
+        OfferwallListener listener = fOfferwallListener;
+        if (listener != null) {
+            callbacks.incrementAndGet();
+            listener.onOfferwallAvailable(available);
+        }
+    }
+
+    // -------------------------------------------------------
+    // load generation
+    // -------------------------------------------------------
+
+    /**
+     * Fires one callback, picked at random with weights close to a busy rewarded video session, on the calling thread.
+     */
+    void fireRandomCallback(Random random) {
+        InterstitialListener interstitial = fInterstitialListener;
+        RewardedVideoListener rewardedVideo = fRewardedVideoListener;
+        OfferwallListener offerwall = fOfferwallListener;
+        if (interstitial == null || rewardedVideo == null || offerwall == null) {
+            return;
+        }
+
+        callbacks.incrementAndGet();
+        int pick = random.nextInt(100);
+
+        if (pick < 30) {
+            rewardedVideo.onRewardedVideoAvailabilityChanged(random.nextDouble() < fScript.fillRate);
+        } else if (pick < 45) {
+            rewardedVideo.onRewardedVideoAdStarted();
+        } else if (pick < 60) {
+            rewardedVideo.onRewardedVideoAdEnded();
+        } else if (pick < 68) {
+            rewardedVideo.onRewardedVideoAdRewarded(PLACEMENT);
+        } else if (pick < 75) {
+            rewardedVideo.onRewardedVideoAdClosed();
+        } else if (pick < 82) {
+            if (random.nextDouble() < fScript.fillRate) {
+                interstitial.onInterstitialAdReady();
+            } else {
+                int[] codes = fScript.errorCodes;
+                interstitial.onInterstitialAdLoadFailed(new IronSourceError(codes[random.nextInt(codes.length)], "fake error"));
+            }
+        } else if (pick < 88) {
+            interstitial.onInterstitialAdClicked();
+        } else if (pick < 94) {
+            interstitial.onInterstitialAdClosed();
+        } else if (pick < 97) {
+            offerwall.onOfferwallAvailable(random.nextDouble() < fScript.fillRate);
+        } else {
+            offerwall.onOfferwallAdCredited(10, 100, false);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+//
+//  LoadGenerator.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Stress test of the plugin's SDK callback to Lua path, off-device.
+ * <p>
+ * Wires the real listener classes, handlers and {@link EventDispatcher} to a {@link FakeAdBackend}. Producer threads
+ * fire SDK callbacks at a fixed total rate while a simulated Lua thread drains the event queue once per frame into a
+ * stub listener. Once a second it prints the events delivered to Lua, the queue depth and the dropped events.
+ *
+ *   gradle -p src/android/benchmark loadTest --args="--rate=5000 --threads=4 --seconds=10"
+ *
+ * Options: rate (callbacks per second, all threads), threads, seconds, fps, eventsPerFrame, capacity,
+ * listenerCost (microseconds spent in the stub Lua listener per event), fillRate, sessions (also run
+ * load/show flows through the handlers), preload (enable interstitial preloading), jsonRewards (JSON reward responses),
+ * reuseEventTables (update prebuilt event tables instead of creating one per event).
+ */
+public final class LoadGenerator {
+    private final int fRate;
+    private final int fThreads;
+    private final int fSeconds;
+    private final int fFps;
+    private final long fListenerCostNanos;
+    private final boolean fSessions;
+
+    private final FakeAdBackend fBackend;
+    private final AdMetrics fMetrics = new AdMetrics();
+    private final PacingEngine fPacing = new PacingEngine();
+    private final EventDispatcher fEvents;
+    private final AdUnitRegistry fAdUnits = new AdUnitRegistry();
+    private final InterstitialPreloader fPreloader;
+
+    // simulated Lua thread
+    private final LuaState fLuaState = new LuaState();
+    private final LuaEventTables fTables;
+    private final AtomicBoolean fDrainRequested = new AtomicBoolean();
+    private final AtomicLong fDelivered = new AtomicLong();
+    private final AtomicLong[] fDeliveredByPhase = newCounters(AdPhase.values().length);
+    private volatile int fMaxDepth;
+
+    private volatile boolean fRunning = true;
+
+    private static AtomicLong[] newCounters(int count) {
+        AtomicLong[] counters = new AtomicLong[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new AtomicLong();
+        }
+        return counters;
+    }
+
+    // Lua side of the event pipeline: a frame loop and a listener that only marshals the event table
+    private final EventDispatcher.Target fTarget = new EventDispatcher.Target() {
+        @Override
+        public boolean isAttached() {
+            return true;
+        }
+
+        @Override
+        public void scheduleDrain() {
+            fDrainRequested.set(true);
+        }
+
+        @Override
+        public void deliver(LuaState L, AdEvent event) {
+            LuaEventWriter.write(L, event, fTables);
+            L.pop(1);
+
+            if (fListenerCostNanos > 0) {
+                long end = System.nanoTime() + fListenerCostNanos;
+                while (System.nanoTime() < end) {
+                    // busy listener
+                }
+            }
+
+            fDelivered.incrementAndGet();
+            fDeliveredByPhase[event.phase.ordinal()].incrementAndGet();
+        }
+    };
+
+    private final AvailabilityState.TransitionListener fAvailabilityListener = new AvailabilityState.TransitionListener() {
+        @Override
+        public void onAvailabilityTransition(AdType type, boolean ready) {
+            if (ready) {
+                fEvents.dispatchAvailability(AdPhase.LOADED, type, false, null);
+            } else {
+                fEvents.dispatchAvailability(AdPhase.FAILED, type, true, "noFill");
+            }
+        }
+
+        @Override
+        public void onAvailabilityUnknown(AdType type) {
+            fAdUnits.get(type).refresh();
+        }
+    };
+
+    private LoadGenerator(Options options) {
+        fRate = options.getInt("rate", 5000);
+        fThreads = options.getInt("threads", 4);
+        fSeconds = options.getInt("seconds", 10);
+        fFps = options.getInt("fps", 60);
+        fListenerCostNanos = options.getInt("listenerCost", 0) * 1000L;
+        fSessions = options.getBoolean("sessions", false);
+        fTables = options.getBoolean("reuseEventTables", false) ? new LuaEventTables() : null;
+
+        fBackend = new FakeAdBackend(new FakeAdBackend.Script()
+                .threads(fThreads)
+                .fillRate(options.getDouble("fillRate", 0.8)));
+
+        fEvents = new EventDispatcher(fTarget, fMetrics, options.getInt("capacity", EventDispatcher.DEFAULT_CAPACITY));
+        fEvents.setEventsPerFrame(options.getInt("eventsPerFrame", EventDispatcher.DEFAULT_EVENTS_PER_FRAME));
+
+        fAdUnits.register(new OfferWallHandler(fBackend, fAvailabilityListener));
+        fAdUnits.register(new InterstitialHandler(fBackend, fAvailabilityListener));
+        fAdUnits.register(new RewardedVideoHandler(fBackend, fAvailabilityListener));
+        fPreloader = new InterstitialPreloader(fAdUnits.get(AdType.INTERSTITIAL), new UiCommandQueue());
+
+        // the ledger is left closed, rewards are dispatched without being logged
+        RewardDispatcher rewards = new RewardDispatcher(fEvents, new RewardLedger());
+        rewards.setJsonRewards(options.getBoolean("jsonRewards", false));
+        AdTelemetry telemetry = new AdTelemetry();
+        fBackend.setOfferwallListener(new SupersonicOfferWallListener(fEvents, fAdUnits, telemetry, fMetrics, fPacing, rewards));
+        fBackend.setInterstitialListener(new SupersonicInterstitialListener(fEvents, fAdUnits, telemetry, fMetrics, fPacing, fPreloader));
+        fBackend.setRewardedVideoListener(new SupersonicRewardedVideoListener(fEvents, fAdUnits, telemetry, fMetrics, fPacing, rewards));
+        fBackend.init(null, "fake", null);
+
+        if (options.getBoolean("preload", false)) {
+            fPreloader.start();
+        }
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf("rate=%d/s threads=%d fps=%d queue capacity=%d%n", fRate, fThreads, fFps, fEvents.capacity());
+        System.out.println("second  callbacks/s  delivered/s  depth  maxDepth  dropped");
+
+        Thread lua = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                frameLoop();
+            }
+        }, "lua");
+        lua.setDaemon(true);
+        lua.start();
+
+        for (int i = 0; i < fThreads; i++) {
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    produce(fRate / (double) fThreads);
+                }
+            }, "sdk-callbacks-" + i);
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        if (fSessions) {
+            Thread sessions = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    playSessions();
+                }
+            }, "sessions");
+            sessions.setDaemon(true);
+            sessions.start();
+        }
+
+        long lastCallbacks = 0;
+        long lastDelivered = 0;
+        for (int second = 1; second <= fSeconds; second++) {
+            Thread.sleep(1000);
+
+            long callbacks = fBackend.callbacks.get();
+            long delivered = fDelivered.get();
+            System.out.printf("%6d  %11d  %11d  %5d  %8d  %7d%n", second, callbacks - lastCallbacks, delivered - lastDelivered,
+                    fEvents.depth(), fMaxDepth, fEvents.droppedEvents());
+            lastCallbacks = callbacks;
+            lastDelivered = delivered;
+            fMaxDepth = 0;
+        }
+
+        fRunning = false;
+        fPreloader.stop();
+        fBackend.shutdown();
+
+        System.out.println();
+        System.out.printf("callbacks %d, delivered %d, dropped %d, coalesced %d, SDK calls %d%n", fBackend.callbacks.get(), fDelivered.get(),
+                fEvents.droppedEvents(), fEvents.coalescedEvents(), fBackend.sdkCalls.get());
+        for (AdPhase phase : AdPhase.values()) {
+            System.out.printf("  %-14s %d%n", phase.luaName, fDeliveredByPhase[phase.ordinal()].get());
+        }
+    }
+
+    // Drains the event queue once per frame, the way CoronaRuntimeTaskDispatcher runs the drain task
+    private void frameLoop() {
+        long frameNanos = TimeUnit.SECONDS.toNanos(1) / fFps;
+        long next = System.nanoTime();
+
+        while (fRunning) {
+            int depth = fEvents.depth();
+            if (depth > fMaxDepth) {
+                fMaxDepth = depth;
+            }
+
+            if (fDrainRequested.getAndSet(false)) {
+                fEvents.drain(fLuaState);
+            }
+
+            next += frameNanos;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+
+    // Fires callbacks at a fixed rate from the calling thread
+    private void produce(double perSecond) {
+        Random random = new Random();
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        long next = System.nanoTime();
+
+        while (fRunning) {
+            fBackend.fireRandomCallback(random);
+
+            next += intervalNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    // Loads and shows ads through the handlers, like a game calling supersonic.load/show
+    private void playSessions() {
+        AdUnitHandler interstitial = fAdUnits.get(AdType.INTERSTITIAL);
+        AdUnitHandler rewardedVideo = fAdUnits.get(AdType.REWARDED_VIDEO);
+        AdUnitHandler offerWall = fAdUnits.get(AdType.OFFER_WALL);
+
+        while (fRunning) {
+            fMetrics.onLoadRequested(AdType.INTERSTITIAL);
+            interstitial.load();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+
+            for (AdUnitHandler handler : new AdUnitHandler[] { interstitial, rewardedVideo, offerWall }) {
+                if (handler.isReady()) {
+                    fMetrics.onShowRequested(handler.type);
+                    fEvents.dispatch(AdPhase.DISPLAYED, handler.type);
+                    handler.show(null);
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(150));
+        }
+    }
+
+    // --name=value command line options
+    private static final class Options {
+        private final String[] fArgs;
+
+        Options(String[] args) {
+            fArgs = args;
+        }
+
+        private String get(String name) {
+            String prefix = "--" + name + "=";
+            for (String arg : fArgs) {
+                if (arg.startsWith(prefix)) {
+                    return arg.substring(prefix.length());
+                }
+                if (arg.equals("--" + name)) {
+                    return "true";
+                }
+            }
+            return null;
+        }
+
+        int getInt(String name, int defaultValue) {
+            String value = get(name);
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        }
+
+        double getDouble(String name, double defaultValue) {
+            String value = get(name);
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        }
+
+        boolean getBoolean(String name, boolean defaultValue) {
+            String value = get(name);
+            return value != null ? Boolean.parseBoolean(value) : defaultValue;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        new LoadGenerator(new Options(args)).run();
+    }
+}
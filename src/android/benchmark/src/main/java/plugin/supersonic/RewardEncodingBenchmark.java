@@ -0,0 +1,69 @@
+//
+//  RewardEncodingBenchmark.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.naef.jnlua.LuaState;
+
+import com.ironsource.mediationsdk.model.Placement;
+
+/**
+ * Reward payload encoding done in onRewardedVideoAdRewarded and onOfferwallAdCredited.
+ * <p>
+ * The *Json benchmarks only measure the encoding (the Lua side still has to decode the string), the *Table
+ * benchmarks cover building the payload and pushing it as a nested table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RewardEncodingBenchmark {
+    private final Placement fPlacement = new Placement(1, "DefaultRewardedVideo", "Coins", 25, null);
+    private final LuaState fLuaState = new LuaState();
+
+    @Benchmark
+    public String rewardedVideoJson() {
+        return RewardJson.placement(fPlacement);
+    }
+
+    @Benchmark
+    public String offerWallJson() {
+        return RewardJson.credits(100, 1250, false);
+    }
+
+    @Benchmark
+    public long rewardedVideoTable() {
+        fLuaState.newTable(0, 7);
+        RewardPayload.placement(fPlacement).push(fLuaState);
+        fLuaState.pop(1);
+        return fLuaState.fieldCount;
+    }
+
+    @Benchmark
+    public long offerWallTable() {
+        fLuaState.newTable(0, 7);
+        RewardPayload.credits(100, 1250, false).push(fLuaState);
+        fLuaState.pop(1);
+        return fLuaState.fieldCount;
+    }
+}
@@ -0,0 +1,85 @@
+//
+//  TraceDecoder.java
+//  Supersonic plugin benchmarks
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Prints a supersonic.dumpTrace() file as a timeline, one line per record:
+ * <pre>
+ *   wall clock time  +ms since the first record  thread  ad type  trace point  code
+ * </pre>
+ * The trace point names are read from the file, so dumps of other plugin versions decode too.
+ *
+ *   gradle -p src/android/benchmark decodeTrace --args="supersonic_trace.bin"
+ */
+public final class TraceDecoder {
+    private static final int MAGIC = 0x53535452;   // "SSTR"
+
+    private TraceDecoder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: TraceDecoder <trace file>");
+            System.exit(2);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0])));
+        if (in.getInt() != MAGIC) {
+            System.err.println(args[0] + ": not a supersonic trace");
+            System.exit(1);
+        }
+        int version = in.getShort();
+        long dumpNanos = in.getLong();
+        long dumpMillis = in.getLong();
+
+        String[] points = new String[in.getShort()];
+        for (int i = 0; i < points.length; i++) {
+            byte[] name = new byte[in.getShort()];
+            in.get(name);
+            points[i] = new String(name, Charset.forName("UTF-8"));
+        }
+
+        int count = in.getInt();
+        SimpleDateFormat clock = new SimpleDateFormat("HH:mm:ss.SSS");
+        System.out.printf("trace version %d, %d records, dumped %s%n", version, count,
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(dumpMillis)));
+
+        long first = 0;
+        for (int i = 0; i < count; i++) {
+            long nanos = in.getLong();
+            int point = in.getShort() & 0xffff;
+            int type = in.get();
+            int thread = in.getInt();
+            int code = in.getInt();
+
+            if (i == 0) {
+                first = nanos;
+            }
+
+            // nanoTime has no epoch, place records relative to the dump
+            long millis = dumpMillis - (dumpNanos - nanos) / 1000000;
+            System.out.printf("%s  %+11.3f ms  thread %-6d %-14s %-36s %d%n",
+                    clock.format(new Date(millis)),
+                    (nanos - first) / 1e6,
+                    thread,
+                    type >= 0 && type < AdType.VALUES.length ? AdType.VALUES[type].luaName : "-",
+                    point < points.length ? points[point] : "#" + point,
+                    code);
+        }
+    }
+}
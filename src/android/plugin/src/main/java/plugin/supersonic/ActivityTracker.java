@@ -0,0 +1,106 @@
+//
+//  ActivityTracker.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import android.app.Activity;
+import android.os.Build;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Weak access to the Corona activities the plugin works with, and a count of the ones that outlive their life.
+ * <p>
+ * Work posted to the UI thread or the background executor holds a {@link Ref} instead of the activity, so a queued
+ * runnable can't keep a destroyed activity (and its GL surface) in memory. {@link Ref#get()} checks the activity
+ * again when the work runs.
+ * <p>
+ * Every activity handed to {@link #track(Activity)} is remembered through a weak reference. An activity that has
+ * been destroyed but is still reachable is counted as retained, reported by supersonic.getMetrics() for soak tests.
+ * A retained activity is only a leak if it stays retained after a garbage collection.
+ */
+final class ActivityTracker {
+    /**
+     * An activity captured by posted work.
+     */
+    static final class Ref {
+        private final WeakReference<Activity> fActivity;
+
+        Ref(Activity activity) {
+            fActivity = new WeakReference<>(activity);
+        }
+
+        // The activity if it can still be used, null once it has been destroyed or collected
+        Activity get() {
+            Activity activity = fActivity.get();
+            return activity != null && !isDestroyed(activity) ? activity : null;
+        }
+    }
+
+    // every activity seen so far that hasn't been collected, in the order they were first seen
+    private final ArrayList<WeakReference<Activity>> fSeen = new ArrayList<>();
+
+    // Returns a weak reference to the activity for posted work and remembers the activity
+    synchronized Ref track(Activity activity) {
+        boolean known = false;
+
+        for (int i = fSeen.size() - 1; i >= 0; i--) {
+            Activity seen = fSeen.get(i).get();
+            if (seen == null) {
+                fSeen.remove(i);
+            } else if (seen == activity) {
+                known = true;
+            }
+        }
+
+        if (!known) {
+            fSeen.add(new WeakReference<>(activity));
+        }
+
+        return new Ref(activity);
+    }
+
+    /**
+     * Pushes the activity counts onto the Lua stack.
+     * <p>
+     * { alive, retained }, retained being destroyed activities that haven't been collected yet.
+     */
+    synchronized void push(LuaState L) {
+        int alive = 0;
+        int retained = 0;
+
+        for (int i = fSeen.size() - 1; i >= 0; i--) {
+            Activity seen = fSeen.get(i).get();
+            if (seen == null) {
+                fSeen.remove(i);
+            } else if (isDestroyed(seen)) {
+                retained++;
+            } else {
+                alive++;
+            }
+        }
+
+        L.newTable(0, 2);
+        L.pushNumber(alive);
+        L.setField(-2, "alive");
+        L.pushNumber(retained);
+        L.setField(-2, "retained");
+    }
+
+    // Activity.isDestroyed() needs API 17, isFinishing() is the closest before that
+    private static boolean isDestroyed(Activity activity) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return activity.isDestroyed();
+        }
+        return activity.isFinishing();
+    }
+}
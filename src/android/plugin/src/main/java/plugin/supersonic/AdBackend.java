@@ -0,0 +1,77 @@
+//
+//  AdBackend.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import android.app.Activity;
+
+import com.ironsource.mediationsdk.IronSource;
+import com.ironsource.mediationsdk.model.InterstitialPlacement;
+import com.ironsource.mediationsdk.model.Placement;
+import com.ironsource.mediationsdk.sdk.InterstitialListener;
+import com.ironsource.mediationsdk.sdk.OfferwallListener;
+import com.ironsource.mediationsdk.sdk.RewardedVideoListener;
+
+/**
+ * The mediation SDK calls made by the plugin.
+ * <p>
+ * {@link IronSourceBackend} forwards to the IronSource SDK. Keeping the calls behind this interface lets the
+ * listener classes, handlers and event queue run against a scripted backend off-device (see the benchmark module).
+ */
+interface AdBackend {
+    // Attributes traffic to Corona and sets the server-to-server callback mode, called before init
+    void configure(String pluginVersion, String coronaBuild, boolean clientSideCallbacks);
+
+    void setUserId(String userId);
+
+    void setDynamicUserId(String userId);
+
+    void setConsent(boolean consent);
+
+    void setOfferwallListener(OfferwallListener listener);
+
+    void setInterstitialListener(InterstitialListener listener);
+
+    void setRewardedVideoListener(RewardedVideoListener listener);
+
+    // adUnits may be null to initialize every ad unit
+    void init(Activity activity, String appKey, IronSource.AD_UNIT[] adUnits);
+
+    void validateIntegration(Activity activity);
+
+    void onPause(Activity activity);
+
+    void onResume(Activity activity);
+
+    boolean isOfferwallAvailable();
+
+    void showOfferwall();
+
+    boolean isInterstitialReady();
+
+    void loadInterstitial();
+
+    // placementId may be null for the default placement
+    void showInterstitial(String placementId);
+
+    // null if the placement doesn't exist
+    InterstitialPlacement getInterstitialPlacementInfo(String placementId);
+
+    boolean isInterstitialPlacementCapped(String placementId);
+
+    boolean isRewardedVideoAvailable();
+
+    // placementId may be null for the default placement
+    void showRewardedVideo(String placementId);
+
+    // null if the placement doesn't exist
+    Placement getRewardedVideoPlacementInfo(String placementId);
+
+    boolean isRewardedVideoPlacementCapped(String placementId);
+}
@@ -0,0 +1,75 @@
+//
+//  AdEvent.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * A single adsRequest event on its way from an SDK callback to the Lua listener.
+ * <p>
+ * Instances are owned by an {@link AdEventPool} and are recycled once the event has been pushed into Lua,
+ * so an event must not be touched after it has been handed to {@link EventSink#dispatch(AdEvent)}.
+ */
+final class AdEvent {
+    /**
+     * Extra fields for the few events that carry more than a response string.
+     */
+    interface Payload {
+        // Adds the payload's fields to the event table at the top of the stack (runs on the Lua thread)
+        // A reused table (LuaEventTables) still holds the fields of an earlier event, every field must be overwritten
+        void push(LuaState L);
+    }
+
+    AdPhase phase;
+    AdType type;            // null for events that are not tied to an ad unit (init)
+    boolean isError;
+    String response;        // optional
+    Payload payload;        // optional
+
+    // 'failed' events only: a show failed (SDK show-failed callback, options.pacing), not a load or the availability
+    boolean showFailure;
+
+    // rewards only: RewardLedger id to acknowledge once Lua has the event (0 = not recorded)
+    long ledgerId;
+    boolean replayed;       // sent again after the app ended before the listener saw it
+
+    AdEvent set(AdPhase phase, AdType type, boolean isError, String response) {
+        this.phase = phase;
+        this.type = type;
+        this.isError = isError;
+        this.response = response;
+        this.payload = null;
+        this.showFailure = false;
+        this.ledgerId = 0;
+        this.replayed = false;
+        return this;
+    }
+
+    // Copy of another event for a second listener
+    AdEvent copy(AdEvent source) {
+        set(source.phase, source.type, source.isError, source.response);
+        this.payload = source.payload;
+        this.showFailure = source.showFailure;
+        this.ledgerId = source.ledgerId;
+        this.replayed = source.replayed;
+        return this;
+    }
+
+    void reset() {
+        phase = null;
+        type = null;
+        isError = false;
+        response = null;
+        payload = null;
+        showFailure = false;
+        ledgerId = 0;
+        replayed = false;
+    }
+}
@@ -0,0 +1,61 @@
+//
+//  AdEventPool.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size, lock-free pool of {@link AdEvent} records.
+ * <p>
+ * SDK callbacks obtain events from any thread and the Lua thread recycles them after dispatch.
+ * When the pool runs dry a new event is created, and it is kept if a slot is free when it comes back.
+ */
+final class AdEventPool {
+    private static final int DEFAULT_CAPACITY = 32;
+
+    private final AtomicReferenceArray<AdEvent> fSlots;
+
+    AdEventPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    AdEventPool(int capacity) {
+        fSlots = new AtomicReferenceArray<>(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            fSlots.set(i, new AdEvent());
+        }
+    }
+
+    AdEvent obtain() {
+        for (int i = 0, n = fSlots.length(); i < n; i++) {
+            if (fSlots.get(i) != null) {
+                AdEvent event = fSlots.getAndSet(i, null);
+                if (event != null) {
+                    return event;
+                }
+            }
+        }
+
+        // pool exhausted (burst of events), fall back to a new record
+        return new AdEvent();
+    }
+
+    void recycle(AdEvent event) {
+        event.reset();
+
+        for (int i = 0, n = fSlots.length(); i < n; i++) {
+            if (fSlots.get(i) == null && fSlots.compareAndSet(i, null, event)) {
+                return;
+            }
+        }
+        // pool full, let the record be collected
+    }
+}
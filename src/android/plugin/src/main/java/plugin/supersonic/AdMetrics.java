@@ -0,0 +1,147 @@
+//
+//  AdMetrics.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Event counters and latency histograms behind supersonic.getMetrics().
+ * <p>
+ * Counters are kept per ad type and phase, for every event the SDK reports: events supersonic.setEventFilter()
+ * keeps from Lua are counted too, and complete their measurements. Latencies are measured per ad type from load() to 'loaded',
+ * from show() to the SDK's opened callback, from then to 'closed' and from 'playbackBegan' to 'playbackEnded'.
+ * The 'displayed' event is sent when the show is posted, so it says nothing about how long the ad took to appear.
+ * All recording is done with atomics on preallocated arrays, so it is safe from any thread and allocation free.
+ */
+final class AdMetrics {
+    private static final int TYPE_COUNT = AdType.VALUES.length;
+    private static final int PHASE_COUNT = AdPhase.VALUES.length;
+
+    // [type][phase], the extra row counts events without a type (init)
+    private final AtomicLongArray fCounters = new AtomicLongArray((TYPE_COUNT + 1) * PHASE_COUNT);
+
+    // start timestamps per type, 0 when no measurement is in progress
+    private final AtomicLongArray fLoadStart = new AtomicLongArray(TYPE_COUNT);
+    private final AtomicLongArray fShowStart = new AtomicLongArray(TYPE_COUNT);
+    private final AtomicLongArray fDisplayedAt = new AtomicLongArray(TYPE_COUNT);
+    private final AtomicLongArray fPlaybackStart = new AtomicLongArray(TYPE_COUNT);
+
+    private final LatencyHistogram[] fLoadToReady = newHistograms();
+    private final LatencyHistogram[] fShowToDisplayed = newHistograms();
+    private final LatencyHistogram[] fDisplayedToClosed = newHistograms();
+    private final LatencyHistogram[] fPlayback = newHistograms();
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[TYPE_COUNT];
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    void onLoadRequested(AdType type) {
+        fLoadStart.set(type.ordinal(), System.nanoTime());
+    }
+
+    void onShowRequested(AdType type) {
+        fShowStart.set(type.ordinal(), System.nanoTime());
+    }
+
+    // The SDK has put the ad on screen, called on the SDK callback thread
+    void onOpened(AdType type) {
+        int t = type.ordinal();
+        long now = System.nanoTime();
+
+        complete(fShowStart, t, now, fShowToDisplayed[t]);
+        fDisplayedAt.set(t, now);
+    }
+
+    // Counts an event and completes the measurements it ends
+    void onEvent(AdPhase phase, AdType type) {
+        int row = type != null ? type.ordinal() : TYPE_COUNT;
+        fCounters.incrementAndGet(row * PHASE_COUNT + phase.ordinal());
+
+        if (type == null) {
+            return;
+        }
+
+        int t = type.ordinal();
+        long now = System.nanoTime();
+
+        switch (phase) {
+            case LOADED:
+                complete(fLoadStart, t, now, fLoadToReady[t]);
+                break;
+            case CLOSED:
+                complete(fDisplayedAt, t, now, fDisplayedToClosed[t]);
+                break;
+            case PLAYBACK_BEGAN:
+                fPlaybackStart.set(t, now);
+                break;
+            case PLAYBACK_ENDED:
+                complete(fPlaybackStart, t, now, fPlayback[t]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    long count(AdType type, AdPhase phase) {
+        int row = type != null ? type.ordinal() : TYPE_COUNT;
+        return fCounters.get(row * PHASE_COUNT + phase.ordinal());
+    }
+
+    private static void complete(AtomicLongArray starts, int index, long now, LatencyHistogram histogram) {
+        long start = starts.getAndSet(index, 0);
+        if (start != 0) {
+            histogram.record(now - start);
+        }
+    }
+
+    // Pushes { events = {...}, latency = {...} } onto the Lua stack
+    void push(LuaState L) {
+        L.newTable(0, 2);
+
+        // events = { init = 1, offerWall = { loaded = 1, failed = 0, ... }, ... }
+        L.newTable(0, TYPE_COUNT + 1);
+        L.pushNumber(count(null, AdPhase.INIT));
+        L.setField(-2, AdPhase.INIT.luaName);
+        for (AdType type : AdType.VALUES) {
+            L.newTable(0, PHASE_COUNT);
+            for (AdPhase phase : AdPhase.VALUES) {
+                if (phase != AdPhase.INIT) {
+                    L.pushNumber(count(type, phase));
+                    L.setField(-2, phase.luaName);
+                }
+            }
+            L.setField(-2, type.luaName);
+        }
+        L.setField(-2, "events");
+
+        // latency = { loadToReady = { interstitial = { count, mean, p50, ... } }, ... }
+        L.newTable(0, 4);
+        pushHistograms(L, fLoadToReady, "loadToReady");
+        pushHistograms(L, fShowToDisplayed, "showToDisplayed");
+        pushHistograms(L, fDisplayedToClosed, "displayedToClosed");
+        pushHistograms(L, fPlayback, "playback");
+        L.setField(-2, "latency");
+    }
+
+    private static void pushHistograms(LuaState L, LatencyHistogram[] histograms, String name) {
+        L.newTable(0, TYPE_COUNT);
+        for (AdType type : AdType.VALUES) {
+            histograms[type.ordinal()].push(L);
+            L.setField(-2, type.luaName);
+        }
+        L.setField(-2, name);
+    }
+}
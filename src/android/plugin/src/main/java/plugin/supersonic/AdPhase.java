@@ -0,0 +1,45 @@
+//
+//  AdPhase.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+/**
+ * Phases reported in the 'phase' field of an adsRequest event.
+ */
+enum AdPhase {
+    INIT("init"),
+    LOADED("loaded"),
+    FAILED("failed"),
+    DISPLAYED("displayed"),
+    CLICKED("clicked"),
+    CLOSED("closed"),
+    REWARDED("rewarded"),
+    PLAYBACK_BEGAN("playbackBegan"),
+    PLAYBACK_ENDED("playbackEnded");
+
+    // cached copy of values(), which allocates a new array on every call
+    static final AdPhase[] VALUES = values();
+
+    // value pushed to Lua
+    final String luaName;
+
+    AdPhase(String luaName) {
+        this.luaName = luaName;
+    }
+
+    // Returns null if name is not a phase name
+    static AdPhase fromLuaName(String name) {
+        for (AdPhase phase : VALUES) {
+            if (phase.luaName.equals(name)) {
+                return phase;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,144 @@
+//
+//  AdTelemetry.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-session ad telemetry recorded by the SDK listeners and written out by {@link TelemetryExporter}.
+ * <p>
+ * Counts fills, load and show failures, shows, rewards and the time spent in ad activities per ad type, and
+ * failures per IronSource error code. Counters are striped by thread like LongAdder (not available before API 21):
+ * each thread adds to its own cache-line aligned row of an AtomicLongArray, so recording is one uncontended
+ * atomic add. {@link #snapshot(ByteBuffer)} sums the rows and resets them, so every snapshot covers the time
+ * since the previous one.
+ */
+final class AdTelemetry {
+    // counters per ad type
+    static final int FILLS = 0;
+    static final int LOAD_FAILURES = 1;
+    static final int SHOW_FAILURES = 2;
+    static final int SHOWS = 3;
+    static final int REWARDS = 4;
+    static final int AD_TIME_MILLIS = 5;
+    static final int COUNTER_COUNT = 6;
+
+    static final int MAX_ERROR_CODES = 64;
+
+    private static final int TYPE_COUNT = AdType.VALUES.length;
+    private static final long ERROR_KEY_MARKER = 1L << 40;
+
+    // rows are padded to 64 bytes so two threads never write the same cache line
+    private static final int STRIPES = 8;
+    private static final int ROW_SIZE = (TYPE_COUNT * COUNTER_COUNT + 7) & ~7;
+
+    private final AtomicLongArray fCells = new AtomicLongArray(STRIPES * ROW_SIZE);
+
+    // open addressing on (type, error code), a key is never removed once claimed
+    private final AtomicLongArray fErrorKeys = new AtomicLongArray(MAX_ERROR_CODES);
+    private final AtomicLongArray fErrorCounts = new AtomicLongArray(MAX_ERROR_CODES);
+    private final AtomicLong fErrorOverflow = new AtomicLong();
+
+    // start of the ad activity per type, 0 while none is showing
+    private final AtomicLongArray fOpenedAt = new AtomicLongArray(TYPE_COUNT);
+
+    static final int SNAPSHOT_SIZE = 8 + 8 + 2 + TYPE_COUNT * COUNTER_COUNT * 8 + 2 + MAX_ERROR_CODES * 13 + 8;
+
+    private long fSessionStartMillis = System.currentTimeMillis();
+
+    void add(AdType type, int counter, long value) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        fCells.addAndGet(stripe * ROW_SIZE + type.ordinal() * COUNTER_COUNT + counter, value);
+    }
+
+    void increment(AdType type, int counter) {
+        add(type, counter, 1);
+    }
+
+    // Counts a failed load or show and its IronSource error code
+    void onError(AdType type, int counter, int errorCode) {
+        increment(type, counter);
+
+        // bit 40 keeps the key nonzero (free slot marker)
+        long key = ERROR_KEY_MARKER | ((long) type.ordinal() << 32) | (errorCode & 0xffffffffL);
+        int start = (errorCode * 31 + type.ordinal()) & (MAX_ERROR_CODES - 1);
+        for (int i = 0; i < MAX_ERROR_CODES; i++) {
+            int slot = (start + i) & (MAX_ERROR_CODES - 1);
+            long slotKey = fErrorKeys.get(slot);
+            if (slotKey == 0) {
+                // claim the slot, or see who beat us to it
+                slotKey = fErrorKeys.compareAndSet(slot, 0, key) ? key : fErrorKeys.get(slot);
+            }
+            if (slotKey == key) {
+                fErrorCounts.incrementAndGet(slot);
+                return;
+            }
+        }
+        fErrorOverflow.incrementAndGet();
+    }
+
+    // The ad activity of a type is now in front
+    void onOpened(AdType type) {
+        increment(type, SHOWS);
+        fOpenedAt.set(type.ordinal(), System.nanoTime());
+    }
+
+    void onClosed(AdType type) {
+        long openedAt = fOpenedAt.getAndSet(type.ordinal(), 0);
+        if (openedAt != 0) {
+            add(type, AD_TIME_MILLIS, (System.nanoTime() - openedAt) / 1000000);
+        }
+    }
+
+    /**
+     * Writes the counters since the previous snapshot and resets them. Call from one thread at a time.
+     * <pre>
+     *   long session start, long session end (wall clock milliseconds)
+     *   byte type count, byte counter count, then per type: long counter[counter count]
+     *   short error count, then per error: byte type, int error code, long failures
+     *   long failures not counted by code (error table full)
+     * </pre>
+     * The buffer needs {@link #SNAPSHOT_SIZE} bytes.
+     */
+    void snapshot(ByteBuffer out) {
+        long now = System.currentTimeMillis();
+        out.putLong(fSessionStartMillis);
+        out.putLong(now);
+        fSessionStartMillis = now;
+
+        out.put((byte) TYPE_COUNT);
+        out.put((byte) COUNTER_COUNT);
+        for (int i = 0; i < TYPE_COUNT * COUNTER_COUNT; i++) {
+            long sum = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                sum += fCells.getAndSet(stripe * ROW_SIZE + i, 0);
+            }
+            out.putLong(sum);
+        }
+
+        int countPosition = out.position();
+        short errors = 0;
+        out.putShort(errors);
+        for (int slot = 0; slot < MAX_ERROR_CODES; slot++) {
+            long key = fErrorKeys.get(slot);
+            long failures = fErrorCounts.getAndSet(slot, 0);
+            if (key != 0 && failures > 0) {
+                out.put((byte) (key >>> 32));
+                out.putInt((int) key);
+                out.putLong(failures);
+                errors++;
+            }
+        }
+        out.putShort(countPosition, errors);
+        out.putLong(fErrorOverflow.getAndSet(0));
+    }
+}
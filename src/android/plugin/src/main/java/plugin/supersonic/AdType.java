@@ -0,0 +1,35 @@
+//
+//  AdType.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+/**
+ * Ad unit types reported in the 'type' field of an adsRequest event.
+ */
+enum AdType {
+    OFFER_WALL("offerWall", "OFFER_WALL"),
+    INTERSTITIAL("interstitial", "INTERSTITIAL"),
+    REWARDED_VIDEO("rewardedVideo", "REWARDED_VIDEO");
+
+    // cached copy of values(), which allocates a new array on every call
+    static final AdType[] VALUES = values();
+
+    // value pushed to Lua
+    final String luaName;
+
+    // integer constant exported on the library table, e.g. supersonic.INTERSTITIAL
+    final String constantName;
+    final int luaConstant;
+
+    AdType(String luaName, String constantName) {
+        this.luaName = luaName;
+        this.constantName = constantName;
+        this.luaConstant = ordinal() + 1;
+    }
+}
@@ -0,0 +1,82 @@
+//
+//  AdUnitHandler.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ironsource.mediationsdk.IronSource;
+
+/**
+ * Ad-format specific behaviour behind supersonic.load(), supersonic.show() and supersonic.isLoaded().
+ * <p>
+ * There is one handler per {@link AdType}, registered in an {@link AdUnitRegistry}. Supporting a new ad format
+ * means adding a handler rather than another branch in every Lua function.
+ */
+abstract class AdUnitHandler {
+    final AdType type;
+    final AvailabilityState availability;
+    final AdBackend backend;
+    final PlacementCache placements = new PlacementCache(this);
+
+    // false if the ad unit was left out of the adUnits option of supersonic.init()
+    volatile boolean enabled = true;
+
+    // load() calls answered by a load already in flight or an ad already loaded, without an SDK call
+    final AtomicLong collapsedLoads = new AtomicLong();
+
+    AdUnitHandler(AdType type, AdBackend backend, AvailabilityState.TransitionListener availabilityListener) {
+        this.type = type;
+        this.backend = backend;
+        this.availability = new AvailabilityState(type, availabilityListener);
+    }
+
+    // The SDK ad unit initialized for this handler
+    abstract IronSource.AD_UNIT sdkAdUnit();
+
+    // Asks the SDK whether an ad is ready
+    abstract boolean isAvailable();
+
+    // True if supersonic.load() answers with 'loaded' itself when an ad is ready, even without a listener
+    boolean answersLoadWhenReady() {
+        return false;
+    }
+
+    // Called on the UI thread by supersonic.load()
+    abstract void load();
+
+    // Called by the SDK listener once a load has been answered (ready or failed)
+    void onLoadFinished() {
+    }
+
+    // Called on the UI thread by supersonic.show(), placementId may be null
+    abstract void show(String placementId);
+
+    // Asks the SDK for a placement, null if it doesn't exist or the ad unit has no placements
+    PlacementInfo queryPlacement(String placementId) {
+        return null;
+    }
+
+    // Cached readiness, never calls into the SDK: false until a callback or refresh() has reported a state
+    boolean isReady() {
+        return enabled && availability.get() == AvailabilityState.READY;
+    }
+
+    // Asks the SDK if no callback has reported a state yet, never called on the Lua thread
+    boolean refresh() {
+        if (!enabled) {
+            return false;
+        }
+
+        if (availability.get() == AvailabilityState.UNKNOWN) {
+            availability.initialize(isAvailable());
+        }
+        return isReady();
+    }
+}
@@ -0,0 +1,67 @@
+//
+//  AdUnitRegistry.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaType;
+
+/**
+ * Resolves the adUnitType argument of the Lua API to its {@link AdUnitHandler}.
+ * <p>
+ * Lua may pass either the type name (e.g. "interstitial", matched case-insensitively like before) or one of the
+ * integer constants exported on the library table (e.g. supersonic.INTERSTITIAL), which skips string handling.
+ */
+final class AdUnitRegistry {
+    private final AdUnitHandler[] fHandlers = new AdUnitHandler[AdType.VALUES.length];
+    private final HashMap<String, AdUnitHandler> fHandlersByName = new HashMap<>();
+
+    void register(AdUnitHandler handler) {
+        fHandlers[handler.type.ordinal()] = handler;
+        fHandlersByName.put(handler.type.luaName, handler);
+        fHandlersByName.put(handler.type.luaName.toLowerCase(Locale.US), handler);
+    }
+
+    AdUnitHandler get(AdType type) {
+        return fHandlers[type.ordinal()];
+    }
+
+    AdUnitHandler[] all() {
+        return fHandlers;
+    }
+
+    // Returns null if the value at index is not a supported ad unit type
+    AdUnitHandler resolve(LuaState L, int index) {
+        LuaType luaType = L.type(index);
+
+        if (luaType == LuaType.NUMBER) {
+            int constant = L.toInteger(index);
+            return constant >= 1 && constant <= fHandlers.length ? fHandlers[constant - 1] : null;
+        }
+
+        if (luaType == LuaType.STRING) {
+            String name = L.toString(index);
+            AdUnitHandler handler = fHandlersByName.get(name);
+            return handler != null ? handler : fHandlersByName.get(name.toLowerCase(Locale.US));
+        }
+
+        return null;
+    }
+
+    // Publishes the integer constants on the library table at the top of the stack
+    void pushConstants(LuaState L) {
+        for (AdType type : AdType.VALUES) {
+            L.pushInteger(type.luaConstant);
+            L.setField(-2, type.constantName);
+        }
+    }
+}
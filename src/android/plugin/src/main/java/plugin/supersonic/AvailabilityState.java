@@ -0,0 +1,135 @@
+//
+//  AvailabilityState.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Edge-triggered availability state machine for a single ad unit.
+ * <p>
+ * Tracks both the readiness last reported by the SDK and the readiness last reported to Lua, so a
+ * 'loaded' or 'failed' event is only sent when the value Lua knows about actually changes.
+ * With a debounce window, a change that follows the previous event too closely is held back and
+ * re-checked once the window has passed, so availability that flaps back and forth is reported once.
+ */
+final class AvailabilityState {
+    static final int UNKNOWN = 0;
+    static final int NOT_READY = 1;
+    static final int READY = 2;
+
+    interface TransitionListener {
+        // called from the SDK callback thread, or the main thread for debounced transitions
+        void onAvailabilityTransition(AdType type, boolean ready);
+
+        // the state went back to UNKNOWN, the SDK may be asked again, called from the SDK callback thread
+        void onAvailabilityUnknown(AdType type);
+    }
+
+    private final AdType fType;
+    private final TransitionListener fListener;
+
+    private final AtomicInteger fState = new AtomicInteger(UNKNOWN);       // as reported by the SDK
+    private final AtomicInteger fReported = new AtomicInteger(UNKNOWN);    // as reported to Lua
+    private final AtomicLong fSuppressed = new AtomicLong();
+
+    private volatile long fDebounceMillis;
+    private volatile long fLastTransitionMillis;
+    private Handler fHandler;
+
+    // re-evaluates a transition that was held back by the debounce window
+    private final Runnable fDebounceCheck = new Runnable() {
+        @Override
+        public void run() {
+            int state = fState.get();
+            if (state != UNKNOWN && state != fReported.get()) {
+                emitIfChanged(state);
+            }
+        }
+    };
+
+    AvailabilityState(AdType type, TransitionListener listener) {
+        fType = type;
+        fListener = listener;
+    }
+
+    void setDebounceMillis(long debounceMillis) {
+        if (debounceMillis > 0 && fHandler == null) {
+            fHandler = new Handler(Looper.getMainLooper());
+        }
+        fDebounceMillis = debounceMillis;
+    }
+
+    int get() {
+        return fState.get();
+    }
+
+    // Store a value queried from the SDK, unless a callback reported one in the meantime
+    void initialize(boolean ready) {
+        fState.compareAndSet(UNKNOWN, ready ? READY : NOT_READY);
+    }
+
+    long suppressedCount() {
+        return fSuppressed.get();
+    }
+
+    /**
+     * Records an availability report and notifies the listener if Lua has to be told about it.
+     *
+     * @return Returns true if the listener was notified, false if the report was suppressed.
+     */
+    boolean report(boolean ready) {
+        int state = ready ? READY : NOT_READY;
+        fState.set(state);
+
+        long debounce = fDebounceMillis;
+        if (debounce > 0 && fReported.get() != state) {
+            long wait = fLastTransitionMillis + debounce - System.currentTimeMillis();
+            if (wait > 0) {
+                // too close to the previous event, decide once the window has passed
+                fSuppressed.incrementAndGet();
+                fHandler.removeCallbacks(fDebounceCheck);
+                fHandler.postDelayed(fDebounceCheck, wait);
+                return false;
+            }
+        }
+
+        return emitIfChanged(state);
+    }
+
+    /**
+     * Updates the state without sending an event, used when Lua already learned about the change
+     * from another event (e.g. 'closed').
+     */
+    void reset(int state) {
+        fState.set(state);
+        fReported.set(state);
+
+        if (state == UNKNOWN) {
+            fListener.onAvailabilityUnknown(fType);
+        }
+    }
+
+    private boolean emitIfChanged(int state) {
+        int reported = fReported.get();
+
+        if (reported == state || !fReported.compareAndSet(reported, state)) {
+            fSuppressed.incrementAndGet();
+            return false;
+        }
+
+        fLastTransitionMillis = System.currentTimeMillis();
+        fListener.onAvailabilityTransition(fType, state == READY);
+        return true;
+    }
+}
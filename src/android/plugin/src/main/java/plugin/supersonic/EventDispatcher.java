@@ -0,0 +1,393 @@
+//
+//  EventDispatcher.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Carries ad events from the SDK callback threads to Lua.
+ * <p>
+ * Events come from a pool, are counted in {@link AdMetrics} and wait in a bounded queue until {@link #drain(LuaState)}
+ * runs on the Lua thread, which pushes at most eventsPerFrame of them per run. The Lua side (listener reference,
+ * runtime task dispatcher) is supplied by a {@link Target}, so the pipeline also runs off-device.
+ * <p>
+ * While the target is detached (no runtime yet, runtime suspended or exiting) the queue doubles as the pending buffer:
+ * events are kept in order and delivered after {@link #flush()}. Each ad type has one pending availability slot: the
+ * queue only holds a marker for it, and a newer availability event overwrites the pending one in place. When the
+ * queue is full, 'rewarded' events, availability markers and the final events of pending load() and show() requests
+ * go to an overflow list, which keeps them in order behind the queue. Any other event is dropped.
+ * <p>
+ * Events Lua has filtered out (supersonic.setEventFilter) are rejected on the calling thread before an event is
+ * taken from the pool, and only counted, in {@link AdMetrics} too. The final events of pending load() and show() requests get through
+ * anyway, so every request ends and releases its listener.
+ * <p>
+ * One dispatcher serves one Lua runtime, {@link RuntimeRegistry} fans events out to several of them.
+ */
+final class EventDispatcher implements EventSink {
+    static final int DEFAULT_CAPACITY = 256;
+    static final int DEFAULT_EVENTS_PER_FRAME = 16;
+
+    // filter that lets every event through
+    static final long ALL_EVENTS = -1L;
+
+    private static final int PHASE_COUNT = AdPhase.VALUES.length;
+
+    interface Target {
+        // false while events can't be delivered (no runtime or listener, runtime suspended)
+        boolean isAttached();
+
+        // Runs drain() on the Lua thread, called at most once until that drain has started
+        void scheduleDrain();
+
+        // Pushes one event into Lua, called from drain()
+        void deliver(LuaState L, AdEvent event);
+    }
+
+    private final Target fTarget;
+    private final AdMetrics fMetrics;   // null if the caller counts the events
+
+    // recycled event records, keeps the SDK callback path allocation free
+    private final AdEventPool fPool = new AdEventPool();
+
+    private final EventQueue fQueue;
+
+    // events that must not be dropped but arrived while the queue was full, delivered after it
+    private final ConcurrentLinkedQueue<AdEvent> fOverflow = new ConcurrentLinkedQueue<>();
+
+    // pending availability event per ad type, delivered when its marker comes out of the queue
+    private final AtomicReferenceArray<AdEvent> fAvailability = new AtomicReferenceArray<>(AdType.VALUES.length);
+    private final AdEvent[] fAvailabilityMarkers = new AdEvent[AdType.VALUES.length];
+    private final AtomicBoolean fDrainScheduled = new AtomicBoolean(false);
+    private volatile int fEventsPerFrame = DEFAULT_EVENTS_PER_FRAME;
+
+    // one bit per (ad type, phase) Lua wants, see filterMask()
+    private volatile long fFilter = ALL_EVENTS;
+
+    // final events of pending load() and show() requests, delivered whatever the filter, same bits
+    private volatile long fRequestedEvents;
+
+    // drain statistics, read from any thread
+    private final AtomicLong fDroppedEvents = new AtomicLong();
+    private final AtomicLong fCoalescedEvents = new AtomicLong();
+    private final AtomicLong fFilteredEvents = new AtomicLong();
+    private volatile long fDrainRuns;
+    private volatile long fDrainedEvents;
+    private volatile long fLastDrainNanos;
+    private volatile long fMaxDrainNanos;
+
+    EventDispatcher(Target target, AdMetrics metrics) {
+        this(target, metrics, DEFAULT_CAPACITY);
+    }
+
+    EventDispatcher(Target target, AdMetrics metrics, int capacity) {
+        fTarget = target;
+        fMetrics = metrics;
+        fQueue = new EventQueue(capacity);
+
+        for (AdType type : AdType.VALUES) {
+            fAvailabilityMarkers[type.ordinal()] = new AdEvent().set(AdPhase.LOADED, type, false, null);
+        }
+    }
+
+    void setEventsPerFrame(int eventsPerFrame) {
+        fEventsPerFrame = eventsPerFrame;
+    }
+
+    void setFilter(long filter) {
+        fFilter = filter;
+    }
+
+    // Set by the runtime's RequestRegistry whenever its pending requests change
+    void setRequestedEvents(long requested) {
+        fRequestedEvents = requested;
+    }
+
+    // The filter bit of an ad type and phase, the type may be null (init)
+    static long bit(AdPhase phase, AdType type) {
+        int row = type != null ? type.ordinal() : AdType.VALUES.length;
+        return 1L << (row * PHASE_COUNT + phase.ordinal());
+    }
+
+    /**
+     * Builds an event filter from the ad types and phases to deliver, null for all of them. Events without an
+     * ad type (init) only depend on the phases.
+     */
+    static long filterMask(boolean[] types, boolean[] phases) {
+        long mask = 0;
+        for (int row = 0; row <= AdType.VALUES.length; row++) {
+            if (types != null && row < AdType.VALUES.length && !types[row]) {
+                continue;
+            }
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                if (phases == null || phases[phase]) {
+                    mask |= bit(AdPhase.VALUES[phase], row < AdType.VALUES.length ? AdType.VALUES[row] : null);
+                }
+            }
+        }
+        return mask;
+    }
+
+    // False if Lua has filtered out the event and no pending request waits for it, without counting it
+    boolean wants(AdPhase phase, AdType type) {
+        return ((fFilter | fRequestedEvents) & bit(phase, type)) != 0;
+    }
+
+    // False if Lua has filtered out the event, whatever the pending requests
+    boolean passesFilter(AdPhase phase, AdType type) {
+        return (fFilter & bit(phase, type)) != 0;
+    }
+
+    // False if Lua has filtered out the event, which is then counted and nothing else
+    @Override
+    public boolean accepts(AdPhase phase, AdType type) {
+        if (admits(phase, type)) {
+            return true;
+        }
+
+        // the caller drops the event, the metrics only see it here
+        if (fMetrics != null) {
+            fMetrics.onEvent(phase, type);
+        }
+        return false;
+    }
+
+    // Like accepts(), for an event the metrics have counted already
+    private boolean admits(AdPhase phase, AdType type) {
+        if (wants(phase, type)) {
+            return true;
+        }
+        fFilteredEvents.incrementAndGet();
+        return false;
+    }
+
+    @Override
+    public AdEvent obtain() {
+        return fPool.obtain();
+    }
+
+    // Queue an event for Lua
+    // The event is recycled once it has been pushed into Lua, callers must not hold on to it
+    @Override
+    public void dispatch(AdEvent event) {
+        // counted whatever the filter, so load and show outcomes are measured even if Lua doesn't want them
+        if (fMetrics != null) {
+            fMetrics.onEvent(event.phase, event.type);
+        }
+
+        if (!admits(event.phase, event.type)) {
+            fPool.recycle(event);
+            return;
+        }
+
+        if (!enqueue(event)) {
+            fDroppedEvents.incrementAndGet();
+            fPool.recycle(event);
+            return;
+        }
+
+        scheduleDrain();
+    }
+
+    // Availability change of an ad unit, replaces the previous one if that hasn't been delivered yet
+    @Override
+    public void dispatchAvailability(AdPhase phase, AdType type, boolean isError, String response) {
+        if (!accepts(phase, type)) {
+            return;
+        }
+
+        if (fMetrics != null) {
+            fMetrics.onEvent(phase, type);
+        }
+
+        int slot = type.ordinal();
+        AdEvent previous = fAvailability.getAndSet(slot, fPool.obtain().set(phase, type, isError, response));
+        if (previous != null) {
+            // not delivered yet, its marker is still queued and now delivers this event
+            fCoalescedEvents.incrementAndGet();
+            fPool.recycle(previous);
+            return;
+        }
+
+        enqueue(fAvailabilityMarkers[slot]);
+        scheduleDrain();
+    }
+
+    // Queues an event, or keeps it in the overflow list if it must not be dropped, false if it can't be kept
+    private boolean enqueue(AdEvent event) {
+        // keep the order: nothing may overtake the events waiting in the overflow list
+        if (fOverflow.isEmpty() && fQueue.offer(event)) {
+            return true;
+        }
+
+        if (isKept(event)) {
+            fOverflow.add(event);
+            return true;
+        }
+        return false;
+    }
+
+    // Rewards, availability changes (one per ad type) and the final events pending requests wait for are never dropped
+    private boolean isKept(AdEvent event) {
+        return event.phase == AdPhase.REWARDED || isAvailabilityMarker(event) || (fRequestedEvents & bit(event.phase, event.type)) != 0;
+    }
+
+    private boolean isAvailabilityMarker(AdEvent event) {
+        return event.type != null && event == fAvailabilityMarkers[event.type.ordinal()];
+    }
+
+    // Deliver the pending events once the target is attached again
+    void flush() {
+        if (!fQueue.isEmpty() || !fOverflow.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    // Fill a pooled event and dispatch it
+    @Override
+    public void dispatch(AdPhase phase, AdType type, boolean isError, String response) {
+        if (!accepts(phase, type)) {
+            return;
+        }
+
+        dispatch(fPool.obtain().set(phase, type, isError, response));
+    }
+
+    @Override
+    public void dispatch(AdPhase phase, AdType type) {
+        dispatch(phase, type, false, null);
+    }
+
+    @Override
+    public void dispatchShowFailure(AdType type, String response) {
+        if (!accepts(AdPhase.FAILED, type)) {
+            return;
+        }
+
+        AdEvent event = fPool.obtain().set(AdPhase.FAILED, type, true, response);
+        event.showFailure = true;
+        dispatch(event);
+    }
+
+    // The target's runtime is gone, a drain it had scheduled will never run
+    void detach() {
+        fDrainScheduled.set(false);
+    }
+
+    // Make sure exactly one drain is pending on the Lua thread
+    private void scheduleDrain() {
+        if (fTarget.isAttached() && fDrainScheduled.compareAndSet(false, true)) {
+            fTarget.scheduleDrain();
+        }
+    }
+
+    // Empties the queue into Lua, at most eventsPerFrame events per run (Lua thread)
+    void drain(LuaState L) {
+        // clear the flag first so events queued while draining schedule the next run
+        fDrainScheduled.set(false);
+
+        // detached since the drain was scheduled, keep the events for flush()
+        if (!fTarget.isAttached()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int budget = fEventsPerFrame;
+        int count = 0;
+
+        AdEvent event;
+        while (count < budget && ((event = fQueue.poll()) != null || (event = fOverflow.poll()) != null)) {
+            if (isAvailabilityMarker(event)) {
+                // the newest availability event of the type, the slot takes the next one
+                event = fAvailability.getAndSet(event.type.ordinal(), null);
+                if (event == null) {
+                    continue;
+                }
+            }
+
+            try {
+                fTarget.deliver(L, event);
+            } finally {
+                fPool.recycle(event);
+            }
+            count++;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        fLastDrainNanos = elapsed;
+        if (elapsed > fMaxDrainNanos) {
+            fMaxDrainNanos = elapsed;
+        }
+        fDrainRuns++;
+        fDrainedEvents += count;
+
+        // budget exhausted, continue on the next frame
+        flush();
+    }
+
+    // pending events, queued and overflowed
+    int depth() {
+        return fQueue.size() + fOverflow.size();
+    }
+
+    int capacity() {
+        return fQueue.capacity();
+    }
+
+    long droppedEvents() {
+        return fDroppedEvents.get();
+    }
+
+    long drainedEvents() {
+        return fDrainedEvents;
+    }
+
+    long coalescedEvents() {
+        return fCoalescedEvents.get();
+    }
+
+    long filteredEvents() {
+        return fFilteredEvents.get();
+    }
+
+    /**
+     * Pushes the queue statistics onto the Lua stack.
+     * <p>
+     * { depth, capacity, overflow, dropped, coalesced, filtered, drainRuns, drainedEvents, lastDrainTime, maxDrainTime },
+     * times in milliseconds.
+     */
+    void push(LuaState L) {
+        L.newTable(0, 10);
+        L.pushNumber(fQueue.size());
+        L.setField(-2, "depth");
+        L.pushNumber(fQueue.capacity());
+        L.setField(-2, "capacity");
+        L.pushNumber(fOverflow.size());
+        L.setField(-2, "overflow");
+        L.pushNumber(fDroppedEvents.get());
+        L.setField(-2, "dropped");
+        L.pushNumber(fCoalescedEvents.get());
+        L.setField(-2, "coalesced");
+        L.pushNumber(fFilteredEvents.get());
+        L.setField(-2, "filtered");
+        L.pushNumber(fDrainRuns);
+        L.setField(-2, "drainRuns");
+        L.pushNumber(fDrainedEvents);
+        L.setField(-2, "drainedEvents");
+        L.pushNumber(fLastDrainNanos / 1000000.0);
+        L.setField(-2, "lastDrainTime");
+        L.pushNumber(fMaxDrainNanos / 1000000.0);
+        L.setField(-2, "maxDrainTime");
+    }
+}
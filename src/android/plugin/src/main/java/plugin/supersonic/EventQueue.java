@@ -0,0 +1,100 @@
+//
+//  EventQueue.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free multi-producer/single-consumer ring buffer of {@link AdEvent}s.
+ * <p>
+ * SDK and UI threads call {@link #offer(AdEvent)}; producers claim a slot with a CAS on the tail and never block.
+ * Only the Lua thread may call {@link #poll()}. Every slot carries a sequence number so the consumer never sees
+ * a slot that has been claimed but not yet published.
+ */
+final class EventQueue {
+    private final int fCapacity;
+    private final int fMask;
+    private final AtomicReferenceArray<AdEvent> fSlots;
+    private final AtomicLongArray fSequences;
+
+    private final AtomicLong fTail = new AtomicLong();
+    private volatile long fHead;    // written by the consumer only
+
+    EventQueue(int capacity) {
+        // round up to a power of two so the slot index is a mask
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        fCapacity = size;
+        fMask = size - 1;
+        fSlots = new AtomicReferenceArray<>(size);
+        fSequences = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            fSequences.set(i, i);
+        }
+    }
+
+    // Returns false if the queue is full
+    boolean offer(AdEvent event) {
+        while (true) {
+            long tail = fTail.get();
+            int index = (int) tail & fMask;
+            long diff = fSequences.get(index) - tail;
+
+            if (diff == 0) {
+                if (fTail.compareAndSet(tail, tail + 1)) {
+                    fSlots.set(index, event);
+                    fSequences.lazySet(index, tail + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // slot still holds an event from the previous lap
+                return false;
+            }
+            // else another producer claimed this slot, retry with the new tail
+        }
+    }
+
+    // Consumer (Lua thread) only. Returns null if nothing has been published yet.
+    AdEvent poll() {
+        long head = fHead;
+        int index = (int) head & fMask;
+
+        if (fSequences.get(index) != head + 1) {
+            return null;
+        }
+
+        AdEvent event = fSlots.get(index);
+        fSlots.lazySet(index, null);
+        fSequences.lazySet(index, head + fCapacity);
+        fHead = head + 1;
+
+        return event;
+    }
+
+    // Approximate number of queued events, safe to call from any thread
+    int size() {
+        long size = fTail.get() - fHead;
+        return (int) Math.max(0, Math.min(size, fCapacity));
+    }
+
+    boolean isEmpty() {
+        return fTail.get() == fHead;
+    }
+
+    int capacity() {
+        return fCapacity;
+    }
+}
@@ -0,0 +1,35 @@
+//
+//  EventSink.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+/**
+ * Where the SDK listeners send their events, safe from any thread: a single {@link EventDispatcher}, or every
+ * Corona runtime through {@link RuntimeRegistry}.
+ */
+interface EventSink {
+    // False if no listener wants the event (supersonic.setEventFilter), it can be skipped before any other work
+    boolean accepts(AdPhase phase, AdType type);
+
+    // An empty event to fill and hand to dispatch(AdEvent)
+    AdEvent obtain();
+
+    // Takes ownership of the event, callers must not hold on to it
+    void dispatch(AdEvent event);
+
+    void dispatch(AdPhase phase, AdType type, boolean isError, String response);
+
+    void dispatch(AdPhase phase, AdType type);
+
+    // 'failed' event of a show the SDK couldn't show, ends a pending show request rather than a load
+    void dispatchShowFailure(AdType type, String response);
+
+    // Availability change of an ad unit, replaces the previous one if that hasn't been delivered yet
+    void dispatchAvailability(AdPhase phase, AdType type, boolean isError, String response);
+}
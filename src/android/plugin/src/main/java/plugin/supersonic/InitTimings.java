@@ -0,0 +1,55 @@
+//
+//  InitTimings.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Wall-clock duration of each supersonic.init() stage, reported as event.timings on the 'init' event.
+ */
+final class InitTimings implements AdEvent.Payload {
+    // stages, in the order they run
+    static final int CONFIG = 0;        // plugin data, consent, user id (background)
+    static final int LISTENERS = 1;     // SDK listener registration (background)
+    static final int SDK_INIT = 2;      // IronSource.init (UI thread)
+    static final int VALIDATION = 3;    // IntegrationHelper.validateIntegration, testMode only (background)
+
+    private static final String[] STAGE_NAMES = { "config", "listeners", "sdkInit", "validation" };
+
+    private final long fStartNanos = System.nanoTime();
+    private final long[] fStageNanos = new long[STAGE_NAMES.length];
+    private volatile long fTotalNanos;
+
+    // Measures a stage that started at startNanos, returns the current time so stages can be chained
+    long record(int stage, long startNanos) {
+        long now = System.nanoTime();
+        fStageNanos[stage] = now - startNanos;
+        return now;
+    }
+
+    void finish() {
+        fTotalNanos = System.nanoTime() - fStartNanos;
+    }
+
+    @Override
+    public void push(LuaState L) {
+        // { config = 1.2, listeners = 0.1, sdkInit = 35.8, validation = 0, total = 52.3 } in milliseconds
+        L.newTable(0, STAGE_NAMES.length + 1);
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            L.pushNumber(fStageNanos[i] / 1000000.0);
+            L.setField(-2, STAGE_NAMES[i]);
+        }
+
+        L.pushNumber(fTotalNanos / 1000000.0);
+        L.setField(-2, "total");
+
+        L.setField(-2, "timings");
+    }
+}
@@ -0,0 +1,85 @@
+//
+//  InterstitialHandler.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ironsource.mediationsdk.IronSource;
+import com.ironsource.mediationsdk.model.InterstitialPlacement;
+
+final class InterstitialHandler extends AdUnitHandler {
+    // a load the SDK hasn't answered after this long no longer holds back new ones
+    static final long LOAD_TIMEOUT_MILLIS = 60 * 1000;
+
+    // start of the SDK load in flight, 0 if none
+    private final AtomicLong fLoadStartedMillis = new AtomicLong();
+
+    InterstitialHandler(AdBackend backend, AvailabilityState.TransitionListener availabilityListener) {
+        super(AdType.INTERSTITIAL, backend, availabilityListener);
+    }
+
+    @Override
+    IronSource.AD_UNIT sdkAdUnit() {
+        return IronSource.AD_UNIT.INTERSTITIAL;
+    }
+
+    @Override
+    boolean isAvailable() {
+        return backend.isInterstitialReady();
+    }
+
+    // the SDK doesn't report a loaded interstitial again, supersonic.load() answers the caller itself
+    @Override
+    boolean answersLoadWhenReady() {
+        return true;
+    }
+
+    @Override
+    void load() {
+        // loaded since supersonic.load() checked, the 'loaded' event has reached every runtime already
+        if (availability.get() == AvailabilityState.READY) {
+            collapsedLoads.incrementAndGet();
+            return;
+        }
+
+        // joins the load in flight, whose 'loaded' or 'failed' event answers every caller
+        long now = System.currentTimeMillis();
+        long started = fLoadStartedMillis.get();
+        if (started != 0 && now - started < LOAD_TIMEOUT_MILLIS) {
+            collapsedLoads.incrementAndGet();
+            return;
+        }
+        if (!fLoadStartedMillis.compareAndSet(started, now)) {
+            collapsedLoads.incrementAndGet();
+            return;
+        }
+
+        backend.loadInterstitial();
+    }
+
+    @Override
+    void onLoadFinished() {
+        fLoadStartedMillis.set(0);
+    }
+
+    @Override
+    void show(String placementId) {
+        backend.showInterstitial(placementId);
+    }
+
+    @Override
+    PlacementInfo queryPlacement(String placementId) {
+        InterstitialPlacement placement = backend.getInterstitialPlacementInfo(placementId);
+        if (placement == null) {
+            return null;
+        }
+        return new PlacementInfo(placement.getPlacementName(), null, 0, backend.isInterstitialPlacementCapped(placementId));
+    }
+}
@@ -0,0 +1,178 @@
+//
+//  InterstitialPreloader.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import com.ironsource.mediationsdk.logger.IronSourceError;
+
+/**
+ * Keeps an interstitial loaded without help from Lua (options.preloadInterstitial).
+ * <p>
+ * Loads once the SDK is initialized, reloads as soon as an interstitial is closed and retries failed loads
+ * with capped exponential backoff plus jitter. The backoff depends on the IronSourceError code: configuration
+ * errors stop preloading, capping waits for the maximum delay and a missing connection starts from a longer delay.
+ * Scheduling runs on a dedicated thread, the load itself is queued behind the app's own UI thread commands.
+ */
+final class InterstitialPreloader {
+    private static final String CORONA_LOG_TAG = "Corona";
+
+    private static final long BASE_DELAY_MILLIS = 1000;
+    private static final long NO_CONNECTION_BASE_DELAY_MILLIS = 5000;
+    private static final long MAX_DELAY_MILLIS = 5 * 60 * 1000;
+
+    private final AdUnitHandler fHandler;
+    private final UiCommandQueue fUiCommands;
+    private final Random fRandom = new Random();
+    private ScheduledExecutorService fScheduler;
+    private ScheduledFuture<?> fPending;
+
+    // backoff state, readable from any thread
+    private volatile boolean fEnabled;
+    private volatile boolean fStopped;
+    private volatile int fAttempts;
+    private volatile long fBackoffMillis;
+    private volatile int fLastErrorCode;
+
+    private final Runnable fLoadOnUiThread = new Runnable() {
+        @Override
+        public void run() {
+            fHandler.load();
+        }
+    };
+
+    private final Runnable fLoadTask = new Runnable() {
+        @Override
+        public void run() {
+            fUiCommands.post(UiCommandQueue.BACKGROUND, fLoadOnUiThread);
+        }
+    };
+
+    InterstitialPreloader(AdUnitHandler handler, UiCommandQueue uiCommands) {
+        fHandler = handler;
+        fUiCommands = uiCommands;
+    }
+
+    // Called once the SDK has been initialized
+    synchronized void start() {
+        if (fScheduler == null) {
+            fScheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("supersonic-preload", Thread.MIN_PRIORITY));
+        }
+
+        fEnabled = true;
+        fStopped = false;
+        fAttempts = 0;
+        schedule(0);
+    }
+
+    void onReady() {
+        fAttempts = 0;
+        fBackoffMillis = 0;
+    }
+
+    void onClosed() {
+        if (fEnabled && !fStopped) {
+            fAttempts = 0;
+            fBackoffMillis = 0;
+            schedule(0);
+        }
+    }
+
+    void onLoadFailed(int errorCode) {
+        if (!fEnabled || fStopped) {
+            return;
+        }
+
+        fLastErrorCode = errorCode;
+        int attempts = ++fAttempts;
+        long delay;
+
+        switch (errorCode) {
+            case IronSourceError.ERROR_CODE_NO_CONFIGURATION_AVAILABLE:
+            case IronSourceError.ERROR_CODE_KEY_NOT_SET:
+            case IronSourceError.ERROR_CODE_INVALID_KEY_VALUE:
+            case IronSourceError.ERROR_CODE_INIT_FAILED:
+                // retrying can't fix the configuration
+                fStopped = true;
+                Log.i(CORONA_LOG_TAG, "supersonic: interstitial preloading stopped, error code " + errorCode);
+                return;
+
+            case IronSourceError.ERROR_REACHED_CAP_LIMIT_PER_PLACEMENT:
+            case IronSourceError.ERROR_CAPPED_PER_SESSION:
+                delay = MAX_DELAY_MILLIS;
+                break;
+
+            case IronSourceError.ERROR_NO_INTERNET_CONNECTION:
+                delay = backoff(NO_CONNECTION_BASE_DELAY_MILLIS, attempts);
+                break;
+
+            default:
+                delay = backoff(BASE_DELAY_MILLIS, attempts);
+                break;
+        }
+
+        fBackoffMillis = delay;
+        schedule(delay);
+    }
+
+    synchronized void stop() {
+        fEnabled = false;
+        if (fPending != null) {
+            fPending.cancel(false);
+            fPending = null;
+        }
+    }
+
+    boolean isEnabled() {
+        return fEnabled;
+    }
+
+    boolean isStopped() {
+        return fStopped;
+    }
+
+    int attempts() {
+        return fAttempts;
+    }
+
+    long backoffMillis() {
+        return fBackoffMillis;
+    }
+
+    int lastErrorCode() {
+        return fLastErrorCode;
+    }
+
+    // Capped exponential backoff with "equal jitter": half the delay is fixed, the other half random
+    private long backoff(long baseMillis, int attempts) {
+        long delay = baseMillis << Math.min(attempts - 1, 16);
+        delay = Math.min(delay, MAX_DELAY_MILLIS);
+
+        long half = delay / 2;
+        return half + (long) (fRandom.nextDouble() * half);
+    }
+
+    private synchronized void schedule(long delayMillis) {
+        if (fScheduler == null) {
+            return;
+        }
+
+        if (fPending != null) {
+            fPending.cancel(false);
+        }
+        fPending = fScheduler.schedule(fLoadTask, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,150 @@
+//
+//  IronSourceBackend.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import android.app.Activity;
+
+import com.ironsource.adapters.supersonicads.SupersonicConfig;
+import com.ironsource.mediationsdk.IronSource;
+import com.ironsource.mediationsdk.config.ConfigFile;
+import com.ironsource.mediationsdk.integration.IntegrationHelper;
+import com.ironsource.mediationsdk.model.InterstitialPlacement;
+import com.ironsource.mediationsdk.model.Placement;
+import com.ironsource.mediationsdk.sdk.InterstitialListener;
+import com.ironsource.mediationsdk.sdk.OfferwallListener;
+import com.ironsource.mediationsdk.sdk.RewardedVideoListener;
+
+/**
+ * {@link AdBackend} backed by the IronSource mediation SDK.
+ */
+final class IronSourceBackend implements AdBackend {
+    @Override
+    public void configure(String pluginVersion, String coronaBuild, boolean clientSideCallbacks) {
+        ConfigFile.getConfigFile().setPluginData("Corona", pluginVersion, coronaBuild);
+        SupersonicConfig.getConfigObj().setClientSideCallbacks(clientSideCallbacks);
+    }
+
+    @Override
+    public void setUserId(String userId) {
+        IronSource.setUserId(userId);
+    }
+
+    @Override
+    public void setDynamicUserId(String userId) {
+        IronSource.setDynamicUserId(userId);
+    }
+
+    @Override
+    public void setConsent(boolean consent) {
+        IronSource.setConsent(consent);
+    }
+
+    @Override
+    public void setOfferwallListener(OfferwallListener listener) {
+        IronSource.setOfferwallListener(listener);
+    }
+
+    @Override
+    public void setInterstitialListener(InterstitialListener listener) {
+        IronSource.setInterstitialListener(listener);
+    }
+
+    @Override
+    public void setRewardedVideoListener(RewardedVideoListener listener) {
+        IronSource.setRewardedVideoListener(listener);
+    }
+
+    @Override
+    public void init(Activity activity, String appKey, IronSource.AD_UNIT[] adUnits) {
+        if (adUnits != null) {
+            IronSource.init(activity, appKey, adUnits);
+        } else {
+            IronSource.init(activity, appKey);
+        }
+    }
+
+    @Override
+    public void validateIntegration(Activity activity) {
+        IntegrationHelper.validateIntegration(activity);
+    }
+
+    @Override
+    public void onPause(Activity activity) {
+        IronSource.onPause(activity);
+    }
+
+    @Override
+    public void onResume(Activity activity) {
+        IronSource.onResume(activity);
+    }
+
+    @Override
+    public boolean isOfferwallAvailable() {
+        return IronSource.isOfferwallAvailable();
+    }
+
+    @Override
+    public void showOfferwall() {
+        IronSource.showOfferwall();
+    }
+
+    @Override
+    public boolean isInterstitialReady() {
+        return IronSource.isInterstitialReady();
+    }
+
+    @Override
+    public void loadInterstitial() {
+        IronSource.loadInterstitial();
+    }
+
+    @Override
+    public void showInterstitial(String placementId) {
+        if (placementId != null) {
+            IronSource.showInterstitial(placementId);
+        } else {
+            IronSource.showInterstitial();
+        }
+    }
+
+    @Override
+    public InterstitialPlacement getInterstitialPlacementInfo(String placementId) {
+        return IronSource.getInterstitialPlacementInfo(placementId);
+    }
+
+    @Override
+    public boolean isInterstitialPlacementCapped(String placementId) {
+        return IronSource.isInterstitialPlacementCapped(placementId);
+    }
+
+    @Override
+    public boolean isRewardedVideoAvailable() {
+        return IronSource.isRewardedVideoAvailable();
+    }
+
+    @Override
+    public void showRewardedVideo(String placementId) {
+        if (placementId != null) {
+            IronSource.showRewardedVideo(placementId);
+        } else {
+            IronSource.showRewardedVideo();
+        }
+    }
+
+    @Override
+    public Placement getRewardedVideoPlacementInfo(String placementId) {
+        return IronSource.getRewardedVideoPlacementInfo(placementId);
+    }
+
+    @Override
+    public boolean isRewardedVideoPlacementCapped(String placementId) {
+        return IronSource.isRewardedVideoPlacementCapped(placementId);
+    }
+}
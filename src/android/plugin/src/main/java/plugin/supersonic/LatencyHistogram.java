@@ -0,0 +1,91 @@
+//
+//  LatencyHistogram.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Lock-free latency histogram with fixed power-of-two millisecond buckets.
+ * <p>
+ * Bucket i counts samples below 2^i ms, the last bucket also holds everything above.
+ * Recording is a handful of atomic increments on primitive arrays and never allocates;
+ * percentiles are reported as the upper bound of the bucket they fall into.
+ */
+final class LatencyHistogram {
+    private static final int BUCKET_COUNT = 22;     // up to 2^21 ms (~35 minutes)
+
+    private final AtomicLongArray fBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong fCount = new AtomicLong();
+    private final AtomicLong fSumNanos = new AtomicLong();
+    private final AtomicLong fMaxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+
+        long millis = nanos / 1000000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(millis), BUCKET_COUNT - 1);
+
+        fBuckets.incrementAndGet(bucket);
+        fCount.incrementAndGet();
+        fSumNanos.addAndGet(nanos);
+
+        long max;
+        while (nanos > (max = fMaxNanos.get()) && !fMaxNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    long count() {
+        return fCount.get();
+    }
+
+    // Upper bound in milliseconds of the bucket holding the given percentile (0-100)
+    double percentileMillis(double percentile) {
+        long count = fCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += fBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min(1L << i, fMaxNanos.get() / 1000000.0);
+            }
+        }
+
+        return fMaxNanos.get() / 1000000.0;
+    }
+
+    // Pushes { count, mean, p50, p90, p99, max } (milliseconds) onto the Lua stack
+    void push(LuaState L) {
+        long count = fCount.get();
+
+        L.newTable(0, 6);
+        L.pushNumber(count);
+        L.setField(-2, "count");
+        L.pushNumber(count > 0 ? fSumNanos.get() / (double) count / 1000000.0 : 0);
+        L.setField(-2, "mean");
+        L.pushNumber(percentileMillis(50));
+        L.setField(-2, "p50");
+        L.pushNumber(percentileMillis(90));
+        L.setField(-2, "p90");
+        L.pushNumber(percentileMillis(99));
+        L.setField(-2, "p99");
+        L.pushNumber(fMaxNanos.get() / 1000000.0);
+        L.setField(-2, "max");
+    }
+}
@@ -0,0 +1,81 @@
+//
+//  LuaEventTables.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Reusable adsRequest event tables of one Lua state, for the reuseEventTables option of supersonic.init().
+ * <p>
+ * There is one table per ad type and phase, built on first use and kept in the Lua registry. Name, phase, type and
+ * provider are set when the table is built. Before each dispatch only the fields that change from event to event
+ * are written: isError, response, isReplay and requestId, plus the payload. So delivering an event creates no Lua
+ * table and pushes no constant strings. Listeners must not keep an event table, or a table nested in it, past
+ * the callback.
+ * <p>
+ * Only depends on LuaState, like {@link LuaEventWriter}. Only used on the Lua thread.
+ */
+final class LuaEventTables {
+    private static final int PHASE_COUNT = AdPhase.VALUES.length;
+
+    // registry reference per (ad type, phase), the last row is for events without an ad type, 0 until built
+    private final int[] fRefs = new int[(AdType.VALUES.length + 1) * PHASE_COUNT];
+
+    // Leaves the event's table on top of the stack, with the fields of this event
+    void push(LuaState L, AdEvent event) {
+        int row = event.type != null ? event.type.ordinal() : AdType.VALUES.length;
+        int index = row * PHASE_COUNT + event.phase.ordinal();
+
+        if (fRefs[index] != 0) {
+            L.rawGet(LuaState.REGISTRYINDEX, fRefs[index]);
+        } else {
+            L.newTable(0, 8);
+            LuaEventWriter.writeConstantFields(L, event);
+            L.pushValue(-1);
+            fRefs[index] = L.ref(LuaState.REGISTRYINDEX);
+        }
+
+        L.pushBoolean(event.isError);
+        L.setField(-2, LuaEventWriter.EVENT_ISERROR_KEY);
+
+        // a payload sets or reuses the response itself (rewards)
+        if (event.payload != null) {
+            event.payload.push(L);
+        } else {
+            if (event.response != null) {
+                L.pushString(event.response);
+            } else {
+                L.pushNil();
+            }
+            L.setField(-2, LuaEventWriter.EVENT_RESPONSE_KEY);
+        }
+
+        if (event.replayed) {
+            L.pushBoolean(true);
+        } else {
+            L.pushNil();
+        }
+        L.setField(-2, LuaEventWriter.EVENT_ISREPLAY_KEY);
+
+        // set again by RequestRegistry if the event answers a request
+        L.pushNil();
+        L.setField(-2, LuaEventWriter.EVENT_REQUEST_ID_KEY);
+    }
+
+    // Lets Lua collect the tables
+    void release(LuaState L) {
+        for (int i = 0; i < fRefs.length; i++) {
+            if (fRefs[i] != 0) {
+                L.unref(LuaState.REGISTRYINDEX, fRefs[i]);
+                fRefs[i] = 0;
+            }
+        }
+    }
+}
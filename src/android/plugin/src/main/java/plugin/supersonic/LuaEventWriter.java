@@ -0,0 +1,86 @@
+//
+//  LuaEventWriter.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Marshals an {@link AdEvent} into an adsRequest event table.
+ * <p>
+ * Only depends on LuaState, so the marshalling can be benchmarked on a plain JVM against a stub state.
+ */
+final class LuaEventWriter {
+    static final String EVENT_NAME = "adsRequest";
+    static final String PROVIDER_NAME = "supersonic";
+
+    // Corona event keys (CoronaLuaEvent.*_KEY and the missing ones)
+    private static final String EVENT_NAME_KEY = "name";
+    private static final String EVENT_PHASE_KEY = "phase";
+    private static final String EVENT_TYPE_KEY = "type";
+    static final String EVENT_ISERROR_KEY = "isError";
+    static final String EVENT_RESPONSE_KEY = "response";
+    private static final String EVENT_PROVIDER_KEY = "provider";
+    static final String EVENT_ISREPLAY_KEY = "isReplay";
+    static final String EVENT_REQUEST_ID_KEY = "requestId";
+
+    private LuaEventWriter() {
+    }
+
+    // Leaves the event table on top of the stack, same layout as CoronaLua.newEvent() plus the event fields
+    static void write(LuaState L, AdEvent event) {
+        L.newTable(0, 8);
+
+        writeConstantFields(L, event);
+
+        L.pushBoolean(event.isError);
+        L.setField(-2, EVENT_ISERROR_KEY);
+
+        if (event.response != null) {
+            L.pushString(event.response);
+            L.setField(-2, EVENT_RESPONSE_KEY);
+        }
+
+        if (event.payload != null) {
+            event.payload.push(L);
+        }
+
+        if (event.replayed) {
+            L.pushBoolean(true);
+            L.setField(-2, EVENT_ISREPLAY_KEY);
+        }
+    }
+
+    // Same as write(), but reuses the table of the event's type and phase when the runtime keeps them
+    static void write(LuaState L, AdEvent event, LuaEventTables tables) {
+        if (tables != null) {
+            tables.push(L, event);
+        } else {
+            write(L, event);
+        }
+    }
+
+    // Fields that only depend on the event's type and phase, into the table on top of the stack
+    static void writeConstantFields(LuaState L, AdEvent event) {
+        L.pushString(EVENT_NAME);
+        L.setField(-2, EVENT_NAME_KEY);
+
+        L.pushString(event.phase.luaName);
+        L.setField(-2, EVENT_PHASE_KEY);
+
+        if (event.type != null) {
+            L.pushString(event.type.luaName);
+            L.setField(-2, EVENT_TYPE_KEY);
+        }
+
+        // add provider
+        L.pushString(PROVIDER_NAME);
+        L.setField(-2, EVENT_PROVIDER_KEY);
+    }
+}
@@ -9,10 +9,14 @@
 
 package plugin.supersonic;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.json.JSONObject;
-
+import android.app.Activity;
+import android.content.Context;
 import android.util.Log;
 
 import com.naef.jnlua.LuaState;
@@ -23,22 +27,11 @@ import com.naef.jnlua.NamedJavaFunction;
 import com.ansca.corona.CoronaActivity;
 import com.ansca.corona.CoronaEnvironment;
 import com.ansca.corona.CoronaLua;
-import com.ansca.corona.CoronaLuaEvent;
 import com.ansca.corona.CoronaRuntime;
 import com.ansca.corona.CoronaRuntimeListener;
-import com.ansca.corona.CoronaRuntimeTask;
-import com.ansca.corona.CoronaRuntimeTaskDispatcher;
 
 // SDK provider imports
-import com.ironsource.mediationsdk.config.ConfigFile;
-import com.ironsource.mediationsdk.logger.IronSourceError;
-import com.ironsource.mediationsdk.model.Placement;
-import com.ironsource.mediationsdk.sdk.OfferwallListener;
-import com.ironsource.mediationsdk.sdk.InterstitialListener;
-import com.ironsource.mediationsdk.sdk.RewardedVideoListener;
 import com.ironsource.mediationsdk.IronSource;
-import com.ironsource.mediationsdk.integration.IntegrationHelper;
-import com.ironsource.adapters.supersonicads.SupersonicConfig;
 
 /**
  * Implements the Lua interface for a Corona plugin.
@@ -51,323 +44,107 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
     private final String PLUGIN_VERSION = "1.4.3";
     private final String PLUGIN_SDK_VERSION = "6.8.0"; // no API to get SDK version (yet)
 
-    private final String EVENT_NAME = "adsRequest";
-    private final String PROVIDER_NAME = "supersonic";
+    private final String EVENT_NAME = LuaEventWriter.EVENT_NAME;
+    private final String PROVIDER_NAME = LuaEventWriter.PROVIDER_NAME;
 
     private final String CORONA_LOG_TAG = "Corona";
 
     // ad types
-    private final String TYPE_OFFER_WALL = "offerWall";
-    private final String TYPE_INTERSTITIAL = "interstitial";
-    private final String TYPE_REWARDED_VIDEO = "rewardedVideo";
-
-    // phases
-    private final String PHASE_INIT = "init";
-    private final String PHASE_LOADED = "loaded";
-    private final String PHASE_FAILED = "failed";
-    private final String PHASE_DISPLAYED = "displayed";
-    private final String PHASE_CLICKED = "clicked";
-    private final String PHASE_CLOSED = "closed";
-    private final String PHASE_REWARDED_KEY = "rewarded";
-    private final String PHASE_PLAYBACK_BEGAN = "playbackBegan";
-    private final String PHASE_PLAYBACK_ENDED = "playbackEnded";
+    private final String TYPE_OFFER_WALL = AdType.OFFER_WALL.luaName;
+    private final String TYPE_INTERSTITIAL = AdType.INTERSTITIAL.luaName;
+    private final String TYPE_REWARDED_VIDEO = AdType.REWARDED_VIDEO.luaName;
 
     // responses
     private final String RESPONSE_NO_FILL_KEY = "noFill";
+    private final String RESPONSE_CAPPED_KEY = "capped";
+    private final String RESPONSE_PACED_KEY = "paced";
 
-    // missing Corona Event Keys
-    private static final String EVENT_PHASE_KEY = "phase";
-    private static final String EVENT_TYPE_KEY = "type";
-    private static final String EVENT_DATA_KEY = "data";
-
-    private CoronaRuntimeTaskDispatcher fRuntimeTaskDispatcher;
-    private int fListener = CoronaLua.REFNIL;
-
-    // -------------------------------------------------------------------
-    // Delegates
-    // -------------------------------------------------------------------
-
-    // Dispatch a Lua event to our callback
-    public void dispatchLuaEvent(final HashMap<String, Object> event) {
-        if (fRuntimeTaskDispatcher != null) {
-            fRuntimeTaskDispatcher.send(new CoronaRuntimeTask() {
-                @Override
-                public void executeUsing(CoronaRuntime runtime) {
-                    try {
-                        LuaState L = runtime.getLuaState();
-                        CoronaLua.newEvent(L, EVENT_NAME);
-                        boolean hasErrorKey = false;
-
-                        // add event parameters from map
-                        for (String key : event.keySet()) {
-                            CoronaLua.pushValue(L, event.get(key));           // push value
-                            L.setField(-2, key);                              // push key
-
-                            if (!hasErrorKey) {
-                                hasErrorKey = key.equals(CoronaLuaEvent.ISERROR_KEY);
-                            }
-                        }
-
-                        // add error key if not in map
-                        if (!hasErrorKey) {
-                            L.pushBoolean(false);
-                            L.setField(-2, CoronaLuaEvent.ISERROR_KEY);
-                        }
-
-                        // add provider
-                        L.pushString(PROVIDER_NAME);
-                        L.setField(-2, CoronaLuaEvent.PROVIDER_KEY);
-
-                        CoronaLua.dispatchEvent(L, fListener, 0);
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                }
-            });
-        }
-    }
-
-    // Supersonic offer wall listener class
-    private class SupersonicOfferWallListenerClass implements OfferwallListener {
-        @Override
-        public void onOfferwallAvailable(boolean offerAvailable) {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, offerAvailable ? PHASE_LOADED : PHASE_FAILED);
-            event.put(EVENT_TYPE_KEY, TYPE_OFFER_WALL);
-            event.put(CoronaLuaEvent.ISERROR_KEY, !offerAvailable);
-
-            if (!offerAvailable) {
-                event.put(CoronaLuaEvent.RESPONSE_KEY, RESPONSE_NO_FILL_KEY);
-            }
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
-
-        @Override
-        public void onOfferwallOpened() {
-            // NOP
-            // This event arrives *after* the Corona activity has been suspended
-            // the 'displayed' event is therefore sent in show()
-        }
-
-        @Override
-        public void onOfferwallShowFailed(IronSourceError supersonicError) {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_FAILED);
-            event.put(EVENT_TYPE_KEY, TYPE_OFFER_WALL);
-            event.put(CoronaLuaEvent.ISERROR_KEY, true);
-            event.put(CoronaLuaEvent.RESPONSE_KEY, supersonicError.getErrorMessage());
+    // counters of the client-side pacing rules, in the app's files dir
+    private final String PACING_FILE_NAME = "supersonic_pacing.bin";
 
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
+    // rewards not yet seen by the Lua listener, in the app's files dir
+    private final String REWARD_LEDGER_FILE_NAME = "supersonic_rewards.log";
 
-        @Override
-        public boolean onOfferwallAdCredited(int credits, int totalCredits, boolean totalCreditsFlag) {
-            // The credit info object
-            JSONObject creditInfo = new JSONObject();
+    // telemetry snapshots, in the app's cache dir
+    private final String TELEMETRY_DIRECTORY_NAME = "supersonic_telemetry";
 
-            // Get the credit info
-            try {
-                creditInfo.putOpt("credits", credits);
-                creditInfo.putOpt("totalCredits", totalCredits);
-                creditInfo.putOpt("totalCreditsFlag", totalCreditsFlag);
-            } catch (Exception ex) {
-                //ex.printStackTrace();
-            }
+    // runs plugin work that doesn't need the UI thread (init stages)
+    private ExecutorService fBackgroundExecutor;
 
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_REWARDED_KEY);
-            event.put(EVENT_TYPE_KEY, TYPE_OFFER_WALL);
-            event.put(CoronaLuaEvent.RESPONSE_KEY, creditInfo.toString());
+    // activities are only held weakly by posted work, and counted if they outlive their destruction
+    private final ActivityTracker fActivities = new ActivityTracker();
 
-            // Dispatch the event
-            dispatchLuaEvent(event);
+    // the mediation SDK, all SDK calls go through it
+    private final AdBackend fBackend = new IronSourceBackend();
 
-            return true;
-        }
+    // event counters and latency histograms for supersonic.getMetrics()
+    private final AdMetrics fMetrics = new AdMetrics();
 
-        @Override
-        public void onGetOfferwallCreditsFailed(IronSourceError supersonicError) {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_FAILED);
-            event.put(EVENT_TYPE_KEY, TYPE_OFFER_WALL);
-            event.put(CoronaLuaEvent.ISERROR_KEY, true);
-            event.put(CoronaLuaEvent.RESPONSE_KEY, supersonicError.getErrorMessage());
+    // the Corona runtimes that called supersonic.init(), each with its listener and event queue, SDK events go to all of them
+    private final RuntimeRegistry fRuntimes;
 
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
+    // one handler per ad unit type, resolved from the adUnitType argument of the Lua API
+    private final AdUnitRegistry fAdUnits = new AdUnitRegistry();
 
-        @Override
-        public void onOfferwallClosed() {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_CLOSED);
-            event.put(EVENT_TYPE_KEY, TYPE_OFFER_WALL);
+    // all SDK work on the UI thread goes through this queue
+    private final UiCommandQueue fUiCommands = new UiCommandQueue();
 
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
-    }
+    // the last userId given to supersonic.load(), UI thread only
+    private String fDynamicUserId;
 
-    // Supersonic interstitial listener class
-    private class SupersonicInterstitialListenerClass implements InterstitialListener {
-        @Override
-        public void onInterstitialAdReady() {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_LOADED);
-            event.put(EVENT_TYPE_KEY, TYPE_INTERSTITIAL);
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
-
-        @Override
-        public void onInterstitialAdLoadFailed(IronSourceError supersonicError) {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_FAILED);
-            event.put(EVENT_TYPE_KEY, TYPE_INTERSTITIAL);
-            event.put(CoronaLuaEvent.ISERROR_KEY, true);
-            event.put(CoronaLuaEvent.RESPONSE_KEY, supersonicError.getErrorMessage());
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
-
-        @Override
-        public void onInterstitialAdOpened() {
-            // NOP
-            // This event arrives *after* the Corona activity has been suspended
-            // the 'displayed' event is therefore sent in show()
-        }
-
-        @Override
-        public void onInterstitialAdClosed() {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_CLOSED);
-            event.put(EVENT_TYPE_KEY, TYPE_INTERSTITIAL);
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
+    // keeps an interstitial loaded when options.preloadInterstitial is set
+    private final InterstitialPreloader fInterstitialPreloader;
 
-        @Override
-        public void onInterstitialAdShowSucceeded() {
-            // NOP
-        }
+    // client-side frequency capping and pacing of supersonic.show(), options.pacing
+    private final PacingEngine fPacing = new PacingEngine();
 
-        @Override
-        public void onInterstitialAdShowFailed(IronSourceError supersonicError) {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_FAILED);
-            event.put(EVENT_TYPE_KEY, TYPE_INTERSTITIAL);
-            event.put(CoronaLuaEvent.ISERROR_KEY, true);
-            event.put(CoronaLuaEvent.RESPONSE_KEY, supersonicError.getErrorMessage());
+    // rewards are logged until the Lua listener has received them and replayed on the next init otherwise
+    private final RewardLedger fRewardLedger = new RewardLedger();
+    private final RewardDispatcher fRewards;
 
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
+    // per-session ad telemetry, written to disk on suspend and exit when options.telemetry is set
+    private final AdTelemetry fTelemetry = new AdTelemetry();
+    private final TelemetryExporter fTelemetryExporter = new TelemetryExporter(fTelemetry);
 
-        @Override
-        public void onInterstitialAdClicked() {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_CLICKED);
-            event.put(EVENT_TYPE_KEY, TYPE_INTERSTITIAL);
+    // -------------------------------------------------------------------
+    // Delegates
+    // -------------------------------------------------------------------
 
-            // Dispatch the event
-            dispatchLuaEvent(event);
+    // Single background thread shared by the plugin, created on first use
+    private synchronized ExecutorService getBackgroundExecutor() {
+        if (fBackgroundExecutor == null) {
+            fBackgroundExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("supersonic-background", Thread.NORM_PRIORITY - 1));
         }
+        return fBackgroundExecutor;
     }
 
-    // Supersonic rewarded video listener class
-    private class SupersonicRewardedVideoListenerClass implements RewardedVideoListener {
-        @Override
-        public void onRewardedVideoAdClicked(Placement placement) {
-        }
-
-        @Override
-        public void onRewardedVideoAdOpened() {
-            // NOP
-            // This event arrives *after* the Corona activity has been suspended
-            // the 'displayed' event is therefore sent in show()
-        }
-
+    // Send the 'loaded' or 'failed' event for an availability change
+    private final AvailabilityState.TransitionListener fAvailabilityListener = new AvailabilityState.TransitionListener() {
         @Override
-        public void onRewardedVideoAdClosed() {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_CLOSED);
-            event.put(EVENT_TYPE_KEY, TYPE_REWARDED_VIDEO);
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
-
-        @Override
-        public void onRewardedVideoAvailabilityChanged(boolean hasAvailableAds) {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, (hasAvailableAds) ? PHASE_LOADED : PHASE_FAILED);
-            event.put(EVENT_TYPE_KEY, TYPE_REWARDED_VIDEO);
-            event.put(CoronaLuaEvent.ISERROR_KEY, !hasAvailableAds);
-
-            if (!hasAvailableAds) {
-                event.put(CoronaLuaEvent.RESPONSE_KEY, RESPONSE_NO_FILL_KEY);
+        public void onAvailabilityTransition(AdType type, boolean ready) {
+            if (ready) {
+                fRuntimes.dispatchAvailability(AdPhase.LOADED, type, false, null);
+            } else {
+                fRuntimes.dispatchAvailability(AdPhase.FAILED, type, true, RESPONSE_NO_FILL_KEY);
             }
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
         }
 
         @Override
-        public void onRewardedVideoAdStarted() {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_PLAYBACK_BEGAN);
-            event.put(EVENT_TYPE_KEY, TYPE_REWARDED_VIDEO);
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
-
-        @Override
-        public void onRewardedVideoAdEnded() {
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_PLAYBACK_ENDED);
-            event.put(EVENT_TYPE_KEY, TYPE_REWARDED_VIDEO);
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
+        public void onAvailabilityUnknown(AdType type) {
+            refreshAvailability(fAdUnits.get(type));
         }
-
-        @Override
-        public void onRewardedVideoAdRewarded(Placement placement) {
-            // The placement info object
-            JSONObject placementInfo = new JSONObject();
-
-            // Get the placement info
-            try {
-                placementInfo.putOpt("placementName", placement.getPlacementName());
-                placementInfo.putOpt("rewardName", placement.getRewardName());
-                placementInfo.putOpt("rewardAmount", placement.getRewardAmount());
-            } catch (Exception ex) {
-                //ex.printStackTrace();
+    };
+
+    // Asks the SDK for the availability of an ad unit on the UI thread, so supersonic.isLoaded() only reads the cache
+    private void refreshAvailability(final AdUnitHandler handler) {
+        fUiCommands.post(UiCommandQueue.BACKGROUND, new Runnable() {
+            @Override
+            public void run() {
+                handler.refresh();
             }
-
-            HashMap<String, Object> event = new HashMap<>();
-            event.put(EVENT_PHASE_KEY, PHASE_REWARDED_KEY);
-            event.put(EVENT_TYPE_KEY, TYPE_REWARDED_VIDEO);
-            event.put(CoronaLuaEvent.RESPONSE_KEY, placementInfo.toString());
-
-            // Dispatch the event
-            dispatchLuaEvent(event);
-        }
-
-        @Override
-        public void onRewardedVideoAdShowFailed(IronSourceError supersonicError) {
-            // NOP - Event not available on iOS
-        }
+        });
     }
 
-
     // -------------------------------------------------------
     // plugin implementation
     // -------------------------------------------------------
@@ -379,6 +156,15 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
      * the lifetime of the application process. This gives a plugin the option to do operations in the background while the CoronaActivity is destroyed.
      */
     public LuaLoader() {
+        fRuntimes = new RuntimeRegistry(fMetrics, fRewardLedger);
+        fRewards = new RewardDispatcher(fRuntimes, fRewardLedger);
+
+        fAdUnits.register(new OfferWallHandler(fBackend, fAvailabilityListener));
+        fAdUnits.register(new InterstitialHandler(fBackend, fAvailabilityListener));
+        fAdUnits.register(new RewardedVideoHandler(fBackend, fAvailabilityListener));
+
+        fInterstitialPreloader = new InterstitialPreloader(fAdUnits.get(AdType.INTERSTITIAL), fUiCommands);
+
         // Set up this plugin to listen for Corona runtime events to be received by methods
         // onLoaded(), onStarted(), onSuspended(), onResumed(), and onExiting().
         CoronaEnvironment.addRuntimeListener(this);
@@ -405,10 +191,19 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
                         new Load(),
                         new Show(),
                         new IsLoaded(),
+                        new GetPlacementInfo(),
+                        new IsPlacementCapped(),
+                        new GetStatus(),
+                        new GetMetrics(),
+                        new DumpTrace(),
+                        new SetEventFilter(),
                 };
         String libName = L.toString(1);
         L.register(libName, luaFunctions);
 
+        // Add the ad unit type constants, e.g. supersonic.INTERSTITIAL
+        fAdUnits.pushConstants(L);
+
         // Returning 1 indicates that the Lua require() function will return the above Lua library.
         return 1;
     }
@@ -424,16 +219,20 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
         // This method is executed when the Lua function is called
         @Override
         public int invoke(LuaState L) {
-            // If the listener is null
-            if (fListener == CoronaLua.REFNIL) {
+            TraceBuffer.record(TracePoint.LUA_INIT, null);
+
+            // If this runtime has no listener yet
+            if (fRuntimes.get(L) == null) {
+                final RuntimeRegistry.Entry runtime;
+
                 // Set the delegate's listenerRef to reference the Lua listener function (if it exists)
                 if (CoronaLua.isListener(L, 1, PROVIDER_NAME)) {
-                    // Assign the listener reference
-                    fListener = CoronaLua.newRef(L, 1);
+                    // Assign the listener reference, delivers the events that arrived before a listener was set
+                    runtime = fRuntimes.attach(L, CoronaLua.newRef(L, 1));
                 }
                 // Listener not passed, throw error
                 else {
-                    Log.i(CORONA_LOG_TAG, String.format("ERROR: supersonic.init(listener, options) listener expected, got %s", L.typeName(1)));
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) listener expected, got " + L.typeName(1));
                     return 0;
                 }
 
@@ -451,6 +250,15 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
                 boolean clientSideCallbacks = true;
                 boolean testMode = false;
                 boolean hasUserConsent = false;
+                int eventsPerFrame = EventDispatcher.DEFAULT_EVENTS_PER_FRAME;
+                long availabilityDebounce = 0;
+                long placementCacheTtl = PlacementCache.DEFAULT_TTL_MILLIS;
+                HashMap<String, PacingEngine.Rule> pacingRules = new HashMap<>();
+                boolean[] adUnits = null;   // null initializes every ad unit
+                boolean preloadInterstitial = false;
+                boolean jsonRewards = false;
+                boolean reuseEventTables = false;
+                boolean telemetry = false;
 
                 // Get the options table
                 if (L.type(2) == LuaType.TABLE) {
@@ -506,6 +314,121 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
                         }
                     }
                     L.pop(1);
+
+                    L.getField(2, "preloadInterstitial");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) == LuaType.BOOLEAN) {
+                            preloadInterstitial = L.toBoolean(-1);
+                        } else {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.preloadInterstitial (boolean) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
+
+                    L.getField(2, "telemetry");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) == LuaType.BOOLEAN) {
+                            telemetry = L.toBoolean(-1);
+                        } else {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.telemetry (boolean) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
+
+                    L.getField(2, "jsonRewards");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) == LuaType.BOOLEAN) {
+                            jsonRewards = L.toBoolean(-1);
+                        } else {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.jsonRewards (boolean) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
+
+                    L.getField(2, "reuseEventTables");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) == LuaType.BOOLEAN) {
+                            reuseEventTables = L.toBoolean(-1);
+                        } else {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.reuseEventTables (boolean) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
+
+                    L.getField(2, "adUnits");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) == LuaType.TABLE && L.length(-1) == 0) {
+                            // initializing no ad unit at all is never intended
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.adUnits (non-empty table) expected, got an empty table");
+                            return 0;
+                        } else if (L.type(-1) == LuaType.TABLE) {
+                            adUnits = new boolean[AdType.VALUES.length];
+                            for (int i = 1, n = L.length(-1); i <= n; i++) {
+                                L.rawGet(-1, i);
+                                AdUnitHandler handler = fAdUnits.resolve(L, -1);
+                                if (handler == null) {
+                                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.adUnits Unsupported adUnitType. Valid options are: " + TYPE_OFFER_WALL + ", " + TYPE_INTERSTITIAL + ", " + TYPE_REWARDED_VIDEO);
+                                    return 0;
+                                }
+                                adUnits[handler.type.ordinal()] = true;
+                                L.pop(1);
+                            }
+                        } else {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.adUnits (table) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
+
+                    L.getField(2, "eventsPerFrame");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) == LuaType.NUMBER && L.toInteger(-1) > 0) {
+                            eventsPerFrame = L.toInteger(-1);
+                        } else {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.eventsPerFrame (positive number) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
+
+                    L.getField(2, "availabilityDebounce");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) == LuaType.NUMBER && L.toNumber(-1) >= 0) {
+                            availabilityDebounce = (long) L.toNumber(-1);
+                        } else {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.availabilityDebounce (number) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
+
+                    L.getField(2, "placementCacheTtl");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) == LuaType.NUMBER && L.toNumber(-1) >= 0) {
+                            placementCacheTtl = (long) L.toNumber(-1);
+                        } else {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.placementCacheTtl (number) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
+
+                    L.getField(2, "pacing");
+                    if (!L.isNoneOrNil(-1)) {
+                        if (L.type(-1) != LuaType.TABLE) {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.pacing (table) expected, got " + L.typeName(-1));
+                            return 0;
+                        }
+                        if (!readPacingRules(L, pacingRules)) {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.pacing Invalid rule, expected { maxImpressions=n, window=seconds, minInterval=seconds } per placementId (at most " + PacingEngine.MAX_RULES + ")");
+                            return 0;
+                        }
+                    }
+                    L.pop(1);
                 } else {
                     Log.i(CORONA_LOG_TAG, "supersonic.init(listener, options) options (table) expected, got " + L.typeName(2));
                     return 0;
@@ -517,6 +440,38 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
                     return 0;
                 }
 
+                runtime.events.setEventsPerFrame(eventsPerFrame);
+                runtime.setReuseEventTables(L, reuseEventTables);
+
+                // another Corona activity has brought up the SDK already, this runtime only joins the event fan-out
+                if (fRuntimes.size() > 1) {
+                    fRuntimes.dispatch(runtime, AdPhase.INIT, null);
+                    return 0;
+                }
+
+                fPacing.setRules(pacingRules);
+                fRewards.setJsonRewards(jsonRewards);
+                int enabledCount = 0;
+                for (AdUnitHandler handler : fAdUnits.all()) {
+                    handler.availability.setDebounceMillis(availabilityDebounce);
+                    handler.placements.setTtlMillis(placementCacheTtl);
+                    handler.enabled = adUnits == null || adUnits[handler.type.ordinal()];
+                    if (handler.enabled) {
+                        enabledCount++;
+                    }
+                }
+
+                // SDK ad units to initialize, null for the catch-all init
+                final IronSource.AD_UNIT[] sdkAdUnits = adUnits != null ? new IronSource.AD_UNIT[enabledCount] : null;
+                if (sdkAdUnits != null) {
+                    int i = 0;
+                    for (AdUnitHandler handler : fAdUnits.all()) {
+                        if (handler.enabled) {
+                            sdkAdUnits[i++] = handler.sdkAdUnit();
+                        }
+                    }
+                }
+
                 // Get the corona version
                 L.getGlobal("system");
                 L.getField(-1, "getInfo");
@@ -529,38 +484,126 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
                 Log.i(CORONA_LOG_TAG, PLUGIN_NAME + ": " + PLUGIN_VERSION + " (SDK: " + PLUGIN_SDK_VERSION + ")");
 
                 final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
+                final ActivityTracker.Ref kActivity = coronaActivity != null ? fActivities.track(coronaActivity) : null;
+                final Context kAppContext = coronaActivity != null ? coronaActivity.getApplicationContext() : null;
                 final boolean fClientSideCallbacks = clientSideCallbacks;
                 final String fUserId = userId;
                 final String fAppKey = appKey;
                 final boolean fTestMode = testMode;
                 final boolean fHasUserConsent = hasUserConsent;
+                final boolean fTelemetryEnabled = telemetry;
+                final boolean fPreloadInterstitial = preloadInterstitial && fAdUnits.get(AdType.INTERSTITIAL).enabled;
 
                 if (coronaActivity != null) {
-                    coronaActivity.runOnUiThread(new Runnable() {
+                    final InitTimings timings = new InitTimings();
+
+                    // Initialization runs in stages so the UI thread only does IronSource.init.
+                    // Everything else runs on the background executor, each stage is timed and
+                    // reported on the 'init' event.
+                    final Runnable validationStage = new Runnable() {
+                        @Override
+                        public void run() {
+                            long start = System.nanoTime();
+                            Activity activity = kActivity.get();
+                            if (fTestMode && activity != null) {
+                                fBackend.validateIntegration(activity);
+                            }
+                            timings.record(InitTimings.VALIDATION, start);
+                            timings.finish();
+
+                            // Dispatch the init event
+                            AdEvent event = fRuntimes.obtain().set(AdPhase.INIT, null, false, null);
+                            event.payload = timings;
+                            fRuntimes.dispatch(event);
+                        }
+                    };
+
+                    final Runnable sdkInitStage = new Runnable() {
+                        @Override
+                        public void run() {
+                            // the activity went away while the earlier stages ran, the next supersonic.init() starts over
+                            Activity activity = kActivity.get();
+                            if (activity == null) {
+                                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) the activity was destroyed before the SDK was initialized");
+                                return;
+                            }
+
+                            long start = System.nanoTime();
+                            // sdkAdUnits only lists the ad units the app uses, null brings up all of them
+                            fBackend.init(activity, fAppKey, sdkAdUnits);
+                            timings.record(InitTimings.SDK_INIT, start);
+
+                            if (fPreloadInterstitial) {
+                                fInterstitialPreloader.start();
+                            }
+                            for (AdUnitHandler handler : fAdUnits.all()) {
+                                if (handler.enabled) {
+                                    refreshAvailability(handler);
+                                }
+                            }
+
+                            getBackgroundExecutor().execute(validationStage);
+                        }
+                    };
+
+                    // IronSource.init keeps its place among the UI thread work, loads and shows called from now on wait for it
+                    final UiCommandQueue.Command kSdkInitCommand = fUiCommands.reserve(UiCommandQueue.NORMAL);
+
+                    getBackgroundExecutor().execute(new Runnable() {
                         @Override
                         public void run() {
-                            IronSource.setOfferwallListener(new SupersonicOfferWallListenerClass());
-                            IronSource.setInterstitialListener(new SupersonicInterstitialListenerClass());
-                            IronSource.setRewardedVideoListener(new SupersonicRewardedVideoListenerClass());
+                            try {
+                                runConfigStage();
+                            } finally {
+                                // Filled in from here, IronSource.init lands on the UI thread after the work queued for the first frame
+                                fUiCommands.fill(kSdkInitCommand, sdkInitStage);
+                            }
+                        }
+
+                        private void runConfigStage() {
+                            long start = System.nanoTime();
 
                             // Set the configuration to attribute traffic to Corona
-                            ConfigFile.getConfigFile().setPluginData("Corona", PLUGIN_VERSION, buildVersion);
-                            SupersonicConfig.getConfigObj().setClientSideCallbacks(fClientSideCallbacks);
+                            fBackend.configure(PLUGIN_VERSION, buildVersion, fClientSideCallbacks);
                             if (fUserId != null) {
-                                IronSource.setUserId(fUserId);
+                                fBackend.setUserId(fUserId);
+                            }
+                            fBackend.setConsent(fHasUserConsent);
+
+                            if (fPacing.hasRules()) {
+                                try {
+                                    fPacing.open(new File(kAppContext.getFilesDir(), PACING_FILE_NAME));
+                                } catch (IOException ex) {
+                                    // shows are not paced without the counters
+                                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) options.pacing counters unavailable: " + ex.getMessage());
+                                }
                             }
-                            IronSource.setConsent(fHasUserConsent);
-
-                            IronSource.init(coronaActivity, fAppKey);
 
-                            // Dispatch the init event
-                            HashMap<String, Object> event = new HashMap<>();
-                            event.put(EVENT_PHASE_KEY, PHASE_INIT);
-                            dispatchLuaEvent(event);
+                            // rewards the listener missed last time go out first, once per process
+                            if (!fRewardLedger.isOpen()) {
+                                try {
+                                    fRewards.replay(fRewardLedger.open(new File(kAppContext.getFilesDir(), REWARD_LEDGER_FILE_NAME)));
+                                } catch (IOException ex) {
+                                    // rewards are still dispatched, just not logged
+                                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.init(listener, options) reward ledger unavailable: " + ex.getMessage());
+                                }
+                            }
+                            if (fTelemetryEnabled) {
+                                fTelemetryExporter.open(new File(kAppContext.getCacheDir(), TELEMETRY_DIRECTORY_NAME));
+                            }
+                            start = timings.record(InitTimings.CONFIG, start);
 
-                            if (fTestMode) {
-                                IntegrationHelper.validateIntegration(coronaActivity);
+                            // listeners of ad units left out of options.adUnits are never created
+                            if (fAdUnits.get(AdType.OFFER_WALL).enabled) {
+                                fBackend.setOfferwallListener(new SupersonicOfferWallListener(fRuntimes, fAdUnits, fTelemetry, fMetrics, fPacing, fRewards));
+                            }
+                            if (fAdUnits.get(AdType.INTERSTITIAL).enabled) {
+                                fBackend.setInterstitialListener(new SupersonicInterstitialListener(fRuntimes, fAdUnits, fTelemetry, fMetrics, fPacing, fInterstitialPreloader));
+                            }
+                            if (fAdUnits.get(AdType.REWARDED_VIDEO).enabled) {
+                                fBackend.setRewardedVideoListener(new SupersonicRewardedVideoListener(fRuntimes, fAdUnits, fTelemetry, fMetrics, fPacing, fRewards));
                             }
+                            timings.record(InitTimings.LISTENERS, start);
                         }
                     });
                 }
@@ -568,9 +611,42 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 
             return 0;
         }
+
+        // Reads { [placementId] = { maxImpressions=n, window=seconds, minInterval=seconds }, ... } at the top of the stack
+        private boolean readPacingRules(LuaState L, HashMap<String, PacingEngine.Rule> rules) {
+            L.pushNil();
+            while (L.next(-2)) {
+                // key at -2, rule at -1
+                if (L.type(-2) != LuaType.STRING || L.type(-1) != LuaType.TABLE || rules.size() == PacingEngine.MAX_RULES) {
+                    L.pop(2);
+                    return false;
+                }
+
+                L.getField(-1, "maxImpressions");
+                int maxImpressions = L.type(-1) == LuaType.NUMBER ? L.toInteger(-1) : 0;
+                L.pop(1);
+
+                L.getField(-1, "window");
+                long windowMillis = L.type(-1) == LuaType.NUMBER ? (long) (L.toNumber(-1) * 1000) : 0;
+                L.pop(1);
+
+                L.getField(-1, "minInterval");
+                long minIntervalMillis = L.type(-1) == LuaType.NUMBER ? (long) (L.toNumber(-1) * 1000) : 0;
+                L.pop(1);
+
+                if ((maxImpressions > 0 && windowMillis <= 0) || maxImpressions < 0 || minIntervalMillis < 0) {
+                    L.pop(2);
+                    return false;
+                }
+
+                rules.put(L.toString(-2), new PacingEngine.Rule(maxImpressions, windowMillis, minIntervalMillis));
+                L.pop(1);
+            }
+            return true;
+        }
     }
 
-    // [Lua] supersonic.load(adUnitType, userId)
+    // [Lua] supersonic.load(adUnitType, userId, [listener])
     private class Load implements NamedJavaFunction {
         // Gets the name of the Lua function as it would appear in the Lua script
         @Override
@@ -581,27 +657,38 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
         // This method is executed when the Lua function is called
         @Override
         public int invoke(LuaState L) {
-            // Ensure that .init() has been called first (fListener will not be null if init is called, as it's a required param)
-            if (fListener == CoronaLua.REFNIL) {
-                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId) you must call supersonic.init() before making any other supersonic.* Api calls");
+            TraceBuffer.record(TracePoint.LUA_LOAD, null);
+
+            // Ensure that .init() has been called first (it registers this runtime, as the listener is a required param)
+            final RuntimeRegistry.Entry runtime = fRuntimes.get(L);
+            if (runtime == null) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId, [listener]) you must call supersonic.init() before making any other supersonic.* Api calls");
                 return 0;
             }
 
             // If the user passed too few, or too many arguments
             int numArgs = L.getTop();
-            if (numArgs != 2) {
-                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId) Expected two function arguments, adUnitType, userId - got " + String.valueOf(numArgs) + " function arguments");
+            if (numArgs < 2 || numArgs > 3) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId, [listener]) Expected two or three function arguments, adUnitType, userId, [listener] - got " + String.valueOf(numArgs) + " function arguments");
                 return 0;
             }
 
-            final String adUnitType;
+            final AdUnitHandler handler;
             final String userId;
 
-            // Ensure the adUnitType is a string
-            if (L.type(1) == LuaType.STRING) {
-                adUnitType = L.toString(1);
+            // Ensure the adUnitType is a supported type name or constant
+            if (L.type(1) == LuaType.STRING || L.type(1) == LuaType.NUMBER) {
+                handler = fAdUnits.resolve(L, 1);
+                if (handler == null) {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId, [listener]) Unsupported adUnitType. Valid options are: " + TYPE_OFFER_WALL + ", " + TYPE_INTERSTITIAL + ", " + TYPE_REWARDED_VIDEO);
+                    return 0;
+                }
+                if (!handler.enabled) {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId, [listener]) " + handler.type.luaName + " was not included in supersonic.init() options.adUnits");
+                    return 0;
+                }
             } else {
-                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId) adUnitType (string) expected, got " + L.typeName(1));
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId, [listener]) adUnitType (string) expected, got " + L.typeName(1));
                 return 0;
             }
 
@@ -609,7 +696,13 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
             if (L.type(2) == LuaType.STRING) {
                 userId = L.toString(2);
             } else {
-                Log.i(CORONA_LOG_TAG, "supersonic.load(adUnitType, userId) userId expected, got " + L.typeName(2));
+                Log.i(CORONA_LOG_TAG, "supersonic.load(adUnitType, userId, [listener]) userId expected, got " + L.typeName(2));
+                return 0;
+            }
+
+            // Ensure the listener is a function
+            if (!L.isNoneOrNil(3) && L.type(3) != LuaType.FUNCTION) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.load(adUnitType, userId, [listener]) listener (function) expected, got " + L.typeName(3));
                 return 0;
             }
 
@@ -618,45 +711,53 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
 
             // If the corona activity isn't null
             if (coronaActivity != null) {
+                fMetrics.onLoadRequested(handler.type);
+
+                // A listener must hear back even if Lua was already told that the ad is loaded
+                // the answer only goes to this runtime, the others didn't ask
+                boolean hasListener = !L.isNoneOrNil(3);
+                final boolean kAnswered = (hasListener || handler.answersLoadWhenReady()) && handler.isReady();
+                if (kAnswered) {
+                    handler.collapsedLoads.incrementAndGet();
+                }
+
                 // Create a new runnable object to invoke our activity
                 Runnable runnableActivity = new Runnable() {
                     public void run() {
-                        IronSource.setDynamicUserId(userId);
+                        // the SDK only needs to hear about a new user id
+                        if (!userId.equals(fDynamicUserId)) {
+                            fBackend.setDynamicUserId(userId);
+                            fDynamicUserId = userId;
+                        }
 
                         // Load the correct ad based on the adUnitType
-                        if (adUnitType.equalsIgnoreCase(TYPE_OFFER_WALL)) {
-                            // Offer walls are automatically loaded by the SDK
-                            if (IronSource.isOfferwallAvailable()) {
-                                HashMap<String, Object> event = new HashMap<>();
-                                event.put(EVENT_PHASE_KEY, PHASE_LOADED);
-                                event.put(EVENT_TYPE_KEY, TYPE_OFFER_WALL);
-                                dispatchLuaEvent(event);
-                            }
-                        } else if (adUnitType.equalsIgnoreCase(TYPE_REWARDED_VIDEO)) {
-                            // rewarded videos are automatically loaded by the SDK
-                            if (IronSource.isRewardedVideoAvailable()) {
-                                HashMap<String, Object> event = new HashMap<>();
-                                event.put(EVENT_PHASE_KEY, PHASE_LOADED);
-                                event.put(EVENT_TYPE_KEY, TYPE_REWARDED_VIDEO);
-                                dispatchLuaEvent(event);
-                            }
-                        } else if (adUnitType.equalsIgnoreCase(TYPE_INTERSTITIAL)) {
-                            IronSource.loadInterstitial();
-                        } else {
-                            Log.i(CORONA_LOG_TAG, String.format("supersonic.load(adUnitType, userId) Unsupported adUnitType. Valid options are: %s, %s, %s", TYPE_OFFER_WALL, TYPE_INTERSTITIAL, TYPE_REWARDED_VIDEO));
+                        if (!kAnswered) {
+                            handler.load();
                         }
                     }
                 };
 
+                // the 'loaded' or 'failed' event goes to this listener only
+                // registered before the SDK is asked, so the event can't get past the event filter first
+                int requestId = 0;
+                if (hasListener) {
+                    requestId = runtime.requests.register(CoronaLua.newRef(L, 3), handler.type, false);
+                }
+
                 // Run the activity on the uiThread
-                coronaActivity.runOnUiThread(runnableActivity);
+                fUiCommands.post(UiCommandQueue.NORMAL, runnableActivity);
+
+                if (kAnswered) {
+                    fRuntimes.dispatch(runtime, AdPhase.LOADED, handler.type);
+                }
+                return pushRequestId(L, requestId, 0);
             }
 
             return 0;
         }
     }
 
-    // [Lua] supersonic.show(adUnitType, [placementId])
+    // [Lua] supersonic.show(adUnitType, [placementId], [listener])
     private class Show implements NamedJavaFunction {
         // Gets the name of the Lua function as it would appear in the Lua script
         @Override
@@ -667,36 +768,61 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
         // This method is executed when the Lua function is called
         @Override
         public int invoke(LuaState L) {
-            // Ensure that .init() has been called first (fListener will not be null if init is called, as it's a required param)
-            if (fListener == CoronaLua.REFNIL) {
-                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId]) you must call supersonic.init() before making any other supersonic.* Api calls");
+            TraceBuffer.record(TracePoint.LUA_SHOW, null);
+
+            // Ensure that .init() has been called first (it registers this runtime, as the listener is a required param)
+            final RuntimeRegistry.Entry runtime = fRuntimes.get(L);
+            if (runtime == null) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId], [listener]) you must call supersonic.init() before making any other supersonic.* Api calls");
                 return 0;
             }
 
             // If the user passed too few, or too many arguments
             int numArgs = L.getTop();
-            if (numArgs > 2) {
-                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId]) Expected one or two function arguments, adUnitType, [placementId] - got " + String.valueOf(numArgs) + " function arguments");
+            if (numArgs > 3) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId], [listener]) Expected one to three function arguments, adUnitType, [placementId], [listener] - got " + String.valueOf(numArgs) + " function arguments");
                 return 0;
             }
 
-            final String adUnitType;
+            final AdUnitHandler handler;
             String placementId = null;
+            int listenerIndex = 0;
 
-            // Ensure the adUnitType is a string
-            if (L.type(1) == LuaType.STRING) {
-                adUnitType = L.toString(1);
+            // Ensure the adUnitType is a supported type name or constant
+            if (L.type(1) == LuaType.STRING || L.type(1) == LuaType.NUMBER) {
+                handler = fAdUnits.resolve(L, 1);
+                if (handler == null) {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId], [listener]) Unsupported adUnitType. Valid options are: " + TYPE_OFFER_WALL + ", " + TYPE_INTERSTITIAL + ", " + TYPE_REWARDED_VIDEO);
+                    return 0;
+                }
+                if (!handler.enabled) {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId], [listener]) " + handler.type.luaName + " was not included in supersonic.init() options.adUnits");
+                    return 0;
+                }
             } else {
-                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId]) adUnitType (string) expected, got " + L.typeName(1));
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId], [listener]) adUnitType (string) expected, got " + L.typeName(1));
                 return 0;
             }
 
-            // Ensure the placementId is a string
-            if (!L.isNoneOrNil(2)) {
+            // Ensure the placementId is a string, it may be left out before the listener
+            int listenerArg = 3;
+            if (L.type(2) == LuaType.FUNCTION) {
+                listenerArg = 2;
+            } else if (!L.isNoneOrNil(2)) {
                 if (L.type(2) == LuaType.STRING) {
                     placementId = L.toString(2);
                 } else {
-                    Log.i(CORONA_LOG_TAG, "supersonic.show(adUnitType, [placementId]) placementId (string) expected, got " + L.typeName(2));
+                    Log.i(CORONA_LOG_TAG, "supersonic.show(adUnitType, [placementId], [listener]) placementId (string) expected, got " + L.typeName(2));
+                    return 0;
+                }
+            }
+
+            // Ensure the listener is a function
+            if (!L.isNoneOrNil(listenerArg)) {
+                if (L.type(listenerArg) == LuaType.FUNCTION) {
+                    listenerIndex = listenerArg;
+                } else {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.show(adUnitType, [placementId], [listener]) listener (function) expected, got " + L.typeName(listenerArg));
                     return 0;
                 }
             }
@@ -705,50 +831,40 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
             final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
             final String kPlacementId = placementId;
 
-            if (coronaActivity != null) {
-                Runnable runnableActivity = new Runnable() {
-                    public void run() {
-                        // Load the correct ad based on the adUnitType
-                        if (adUnitType.equalsIgnoreCase(TYPE_OFFER_WALL)) {
-                            HashMap<String, Object> event = new HashMap<>();
-                            event.put(EVENT_PHASE_KEY, PHASE_DISPLAYED);
-                            event.put(EVENT_TYPE_KEY, TYPE_OFFER_WALL);
-                            dispatchLuaEvent(event);
-
-                            IronSource.showOfferwall();
-                        } else if (adUnitType.equalsIgnoreCase(TYPE_INTERSTITIAL)) {
-                            HashMap<String, Object> event = new HashMap<>();
-                            event.put(EVENT_PHASE_KEY, PHASE_DISPLAYED);
-                            event.put(EVENT_TYPE_KEY, TYPE_INTERSTITIAL);
-                            dispatchLuaEvent(event);
-
-                            if (kPlacementId != null) {
-                                IronSource.showInterstitial(kPlacementId);
-                            } else {
-                                IronSource.showInterstitial();
-                            }
-                        } else if (adUnitType.equalsIgnoreCase(TYPE_REWARDED_VIDEO)) {
-                            HashMap<String, Object> event = new HashMap<>();
-                            event.put(EVENT_PHASE_KEY, PHASE_DISPLAYED);
-                            event.put(EVENT_TYPE_KEY, TYPE_REWARDED_VIDEO);
-                            dispatchLuaEvent(event);
-
-                            if (kPlacementId != null) {
-                                IronSource.showRewardedVideo(kPlacementId);
-                            } else {
-                                IronSource.showRewardedVideo();
-                            }
-                        } else {
-                            Log.i(CORONA_LOG_TAG, String.format("supersonic.show(adUnitType, [placementId]) Unsupported adUnitType. Valid options are: %s, %s, %s", TYPE_OFFER_WALL, TYPE_INTERSTITIAL, TYPE_REWARDED_VIDEO));
-                        }
-                    }
-                };
+            if (coronaActivity == null) {
+                return 0;
+            }
 
-                // Run the activity on the uiThread
-                coronaActivity.runOnUiThread(runnableActivity);
+            // every event of this show, including a rejection below, goes to this listener only
+            int requestId = 0;
+            if (listenerIndex != 0) {
+                requestId = runtime.requests.register(CoronaLua.newRef(L, listenerIndex), handler.type, true);
             }
 
-            return 0;
+            // Client-side capping and pacing (options.pacing), a rejected show never leaves the Lua thread
+            int pacing = fPacing.tryShow(handler.type, kPlacementId != null ? kPlacementId : handler.type.luaName);
+            if (pacing != PacingEngine.ALLOWED) {
+                TraceBuffer.record(TracePoint.LUA_SHOW_PACED, handler.type, pacing);
+                fRuntimes.dispatchShowFailure(runtime, handler.type, pacing == PacingEngine.CAPPED ? RESPONSE_CAPPED_KEY : RESPONSE_PACED_KEY);
+                L.pushBoolean(false);
+                return pushRequestId(L, requestId, 1);
+            }
+
+            fMetrics.onShowRequested(handler.type);
+
+            Runnable runnableActivity = new Runnable() {
+                public void run() {
+                    // Show the correct ad based on the adUnitType
+                    fRuntimes.dispatch(runtime, AdPhase.DISPLAYED, handler.type);
+                    handler.show(kPlacementId);
+                }
+            };
+
+            // Run the activity on the uiThread, after the init and loads queued before it (SDK started, user id set)
+            fUiCommands.post(UiCommandQueue.NORMAL, runnableActivity);
+
+            L.pushBoolean(true);
+            return pushRequestId(L, requestId, 1);
         }
     }
 
@@ -763,8 +879,10 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
         // This method is executed when the Lua function is called
         @Override
         public int invoke(LuaState L) {
-            // Ensure that .init() has been called first (fListener will not be null if init is called, as it's a required param)
-            if (fListener == CoronaLua.REFNIL) {
+            TraceBuffer.record(TracePoint.LUA_IS_LOADED, null);
+
+            // Ensure that .init() has been called first (it registers this runtime, as the listener is a required param)
+            if (fRuntimes.get(L) == null) {
                 Log.i(CORONA_LOG_TAG, "ERROR: supersonic.isLoaded(adUnitType) you must call supersonic.init() before making any other supersonic.* Api calls");
                 return 0;
             }
@@ -776,31 +894,321 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
                 return 0;
             }
 
-            final String adUnitType;
-            boolean hasLoaded = false;
+            final AdUnitHandler handler;
 
-            // Ensure the adUnitType is a string
-            if (L.type(1) == LuaType.STRING) {
-                adUnitType = L.toString(1);
+            // Ensure the adUnitType is a supported type name or constant
+            if (L.type(1) == LuaType.STRING || L.type(1) == LuaType.NUMBER) {
+                handler = fAdUnits.resolve(L, 1);
+                if (handler == null) {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.isLoaded(adUnitType) Unsupported adUnitType. Valid options are: " + TYPE_OFFER_WALL + ", " + TYPE_INTERSTITIAL + ", " + TYPE_REWARDED_VIDEO);
+                    return 0;
+                }
             } else {
                 Log.i(CORONA_LOG_TAG, "ERROR: supersonic.isLoaded(adUnitType) adUnitType (string) expected, got " + L.typeName(1));
                 return 0;
             }
 
-            // Check if the ad has loaded
-            if (adUnitType.equalsIgnoreCase(TYPE_OFFER_WALL)) {
-                hasLoaded = IronSource.isOfferwallAvailable();
-            } else if (adUnitType.equalsIgnoreCase(TYPE_INTERSTITIAL)) {
-                hasLoaded = IronSource.isInterstitialReady();
-            } else if (adUnitType.equalsIgnoreCase(TYPE_REWARDED_VIDEO)) {
-                hasLoaded = IronSource.isRewardedVideoAvailable();
+            // Is the ad loaded?
+            L.pushBoolean(handler.isReady());
+
+            return 1;
+        }
+    }
+
+    // [Lua] supersonic.getPlacementInfo(adUnitType, placementId)
+    private class GetPlacementInfo implements NamedJavaFunction {
+        // Gets the name of the Lua function as it would appear in the Lua script
+        @Override
+        public String getName() {
+            return "getPlacementInfo";
+        }
+
+        // This method is executed when the Lua function is called
+        @Override
+        public int invoke(LuaState L) {
+            TraceBuffer.record(TracePoint.LUA_GET_PLACEMENT_INFO, null);
+
+            PlacementInfo info = resolvePlacement(L, "supersonic.getPlacementInfo(adUnitType, placementId)");
+
+            if (info == null) {
+                L.pushNil();
             } else {
-                Log.i(CORONA_LOG_TAG, String.format("supersonic.isLoaded(adUnitType) Unsupported adUnitType. Valid options are: %s, %s, %s", TYPE_OFFER_WALL, TYPE_INTERSTITIAL, TYPE_REWARDED_VIDEO));
+                info.push(L);
+            }
+
+            return 1;
+        }
+    }
+
+    // [Lua] supersonic.isPlacementCapped(adUnitType, placementId)
+    private class IsPlacementCapped implements NamedJavaFunction {
+        // Gets the name of the Lua function as it would appear in the Lua script
+        @Override
+        public String getName() {
+            return "isPlacementCapped";
+        }
+
+        // This method is executed when the Lua function is called
+        @Override
+        public int invoke(LuaState L) {
+            TraceBuffer.record(TracePoint.LUA_IS_PLACEMENT_CAPPED, null);
+
+            PlacementInfo info = resolvePlacement(L, "supersonic.isPlacementCapped(adUnitType, placementId)");
+
+            // unknown placements can't be shown either, nor can placements held back by options.pacing
+            L.pushBoolean(info == null || info.capped || fPacing.isCapped(L.toString(2)));
+
+            return 1;
+        }
+    }
+
+    // Adds the request id to the results of a call that was given a listener
+    private int pushRequestId(LuaState L, int requestId, int results) {
+        if (requestId == 0) {
+            return results;
+        }
+        L.pushNumber(requestId);
+        return results + 1;
+    }
+
+    // Validates the (adUnitType, placementId) arguments and returns the cached placement, null on error or if unknown
+    private PlacementInfo resolvePlacement(LuaState L, String signature) {
+        // Ensure that .init() has been called first (it registers this runtime, as the listener is a required param)
+        if (fRuntimes.get(L) == null) {
+            Log.i(CORONA_LOG_TAG, "ERROR: " + signature + " you must call supersonic.init() before making any other supersonic.* Api calls");
+            return null;
+        }
+
+        // If the user passed too few, or too many arguments
+        int numArgs = L.getTop();
+        if (numArgs != 2) {
+            Log.i(CORONA_LOG_TAG, "ERROR: " + signature + " Expected two function arguments, adUnitType, placementId - got " + String.valueOf(numArgs) + " function arguments");
+            return null;
+        }
+
+        final AdUnitHandler handler;
+
+        // Ensure the adUnitType is a supported type name or constant
+        if (L.type(1) == LuaType.STRING || L.type(1) == LuaType.NUMBER) {
+            handler = fAdUnits.resolve(L, 1);
+            // the offer wall has no placements to query
+            if (handler == null || handler.type == AdType.OFFER_WALL) {
+                Log.i(CORONA_LOG_TAG, "ERROR: " + signature + " Unsupported adUnitType. Valid options are: " + TYPE_INTERSTITIAL + ", " + TYPE_REWARDED_VIDEO);
+                return null;
+            }
+            if (!handler.enabled) {
+                Log.i(CORONA_LOG_TAG, "ERROR: " + signature + " " + handler.type.luaName + " was not included in supersonic.init() options.adUnits");
+                return null;
+            }
+        } else {
+            Log.i(CORONA_LOG_TAG, "ERROR: " + signature + " adUnitType (string) expected, got " + L.typeName(1));
+            return null;
+        }
+
+        // Ensure the placementId is a string
+        if (L.type(2) != LuaType.STRING) {
+            Log.i(CORONA_LOG_TAG, "ERROR: " + signature + " placementId (string) expected, got " + L.typeName(2));
+            return null;
+        }
+
+        return handler.placements.get(L.toString(2));
+    }
+
+    // [Lua] supersonic.getStatus()
+    private class GetStatus implements NamedJavaFunction {
+        // Gets the name of the Lua function as it would appear in the Lua script
+        @Override
+        public String getName() {
+            return "getStatus";
+        }
+
+        // This method is executed when the Lua function is called
+        @Override
+        public int invoke(LuaState L) {
+            TraceBuffer.record(TracePoint.LUA_GET_STATUS, null);
+
+            // Ensure that .init() has been called first (it registers this runtime, as the listener is a required param)
+            if (fRuntimes.get(L) == null) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.getStatus() you must call supersonic.init() before making any other supersonic.* Api calls");
                 return 0;
             }
 
-            // Is the ad loaded?
-            L.pushBoolean(hasLoaded);
+            AdUnitHandler[] handlers = fAdUnits.all();
+
+            // { offerWall = { enabled = true, isLoaded = true, suppressedEvents = 0, collapsedLoads = 0 }, interstitial = { ... }, rewardedVideo = { ... } }
+            L.newTable(0, handlers.length);
+            for (AdUnitHandler handler : handlers) {
+                L.newTable(0, 4);
+
+                L.pushBoolean(handler.enabled);
+                L.setField(-2, "enabled");
+
+                L.pushBoolean(handler.isReady());
+                L.setField(-2, "isLoaded");
+
+                L.pushNumber(handler.availability.suppressedCount());
+                L.setField(-2, "suppressedEvents");
+
+                L.pushNumber(handler.collapsedLoads.get());
+                L.setField(-2, "collapsedLoads");
+
+                if (handler.type == AdType.INTERSTITIAL && fInterstitialPreloader.isEnabled()) {
+                    L.newTable(0, 4);
+                    L.pushNumber(fInterstitialPreloader.attempts());
+                    L.setField(-2, "attempts");
+                    L.pushNumber(fInterstitialPreloader.backoffMillis());
+                    L.setField(-2, "backoff");
+                    L.pushNumber(fInterstitialPreloader.lastErrorCode());
+                    L.setField(-2, "lastErrorCode");
+                    L.pushBoolean(fInterstitialPreloader.isStopped());
+                    L.setField(-2, "stopped");
+                    L.setField(-2, "preload");
+                }
+
+                L.setField(-2, handler.type.luaName);
+            }
+
+            return 1;
+        }
+    }
+
+    // [Lua] supersonic.getMetrics()
+    private class GetMetrics implements NamedJavaFunction {
+        // Gets the name of the Lua function as it would appear in the Lua script
+        @Override
+        public String getName() {
+            return "getMetrics";
+        }
+
+        // This method is executed when the Lua function is called
+        @Override
+        public int invoke(LuaState L) {
+            TraceBuffer.record(TracePoint.LUA_GET_METRICS, null);
+
+            // { events = {...}, latency = {...}, queue = {...}, uiQueue = {...}, activities = {...} }
+            fMetrics.push(L);
+
+            fRuntimes.events(L).push(L);
+            L.setField(-2, "queue");
+
+            fUiCommands.push(L);
+            L.setField(-2, "uiQueue");
+
+            fActivities.push(L);
+            L.setField(-2, "activities");
+
+            return 1;
+        }
+    }
+
+    // [Lua] supersonic.setEventFilter([filter])
+    private class SetEventFilter implements NamedJavaFunction {
+        // Gets the name of the Lua function as it would appear in the Lua script
+        @Override
+        public String getName() {
+            return "setEventFilter";
+        }
+
+        // This method is executed when the Lua function is called
+        @Override
+        public int invoke(LuaState L) {
+            TraceBuffer.record(TracePoint.LUA_SET_EVENT_FILTER, null);
+
+            // Ensure that .init() has been called first, the filter applies to this runtime's listener
+            final RuntimeRegistry.Entry runtime = fRuntimes.get(L);
+            if (runtime == null) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.setEventFilter([filter]) you must call supersonic.init() before making any other supersonic.* Api calls");
+                return 0;
+            }
+
+            // no filter delivers every event again
+            if (L.isNoneOrNil(1)) {
+                runtime.events.setFilter(EventDispatcher.ALL_EVENTS);
+                return 0;
+            }
+
+            if (L.type(1) != LuaType.TABLE) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.setEventFilter([filter]) filter (table) expected, got " + L.typeName(1));
+                return 0;
+            }
+
+            boolean[] types = null;     // null keeps every ad type
+            boolean[] phases = null;    // null keeps every phase
+
+            L.getField(1, "types");
+            if (!L.isNoneOrNil(-1)) {
+                if (L.type(-1) == LuaType.TABLE) {
+                    types = new boolean[AdType.VALUES.length];
+                    for (int i = 1, n = L.length(-1); i <= n; i++) {
+                        L.rawGet(-1, i);
+                        AdUnitHandler handler = fAdUnits.resolve(L, -1);
+                        if (handler == null) {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.setEventFilter([filter]) filter.types Unsupported adUnitType. Valid options are: " + TYPE_OFFER_WALL + ", " + TYPE_INTERSTITIAL + ", " + TYPE_REWARDED_VIDEO);
+                            return 0;
+                        }
+                        types[handler.type.ordinal()] = true;
+                        L.pop(1);
+                    }
+                } else {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.setEventFilter([filter]) filter.types (table) expected, got " + L.typeName(-1));
+                    return 0;
+                }
+            }
+            L.pop(1);
+
+            L.getField(1, "phases");
+            if (!L.isNoneOrNil(-1)) {
+                if (L.type(-1) == LuaType.TABLE) {
+                    phases = new boolean[AdPhase.VALUES.length];
+                    for (int i = 1, n = L.length(-1); i <= n; i++) {
+                        L.rawGet(-1, i);
+                        AdPhase phase = L.type(-1) == LuaType.STRING ? AdPhase.fromLuaName(L.toString(-1)) : null;
+                        if (phase == null) {
+                            Log.i(CORONA_LOG_TAG, "ERROR: supersonic.setEventFilter([filter]) filter.phases Unsupported phase " + L.toString(-1));
+                            return 0;
+                        }
+                        phases[phase.ordinal()] = true;
+                        L.pop(1);
+                    }
+                } else {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic.setEventFilter([filter]) filter.phases (table) expected, got " + L.typeName(-1));
+                    return 0;
+                }
+            }
+            L.pop(1);
+
+            // checked on the SDK callback threads, filtered events never reach Lua
+            runtime.events.setFilter(EventDispatcher.filterMask(types, phases));
+
+            return 0;
+        }
+    }
+
+    // [Lua] supersonic.dumpTrace(path)
+    private class DumpTrace implements NamedJavaFunction {
+        // Gets the name of the Lua function as it would appear in the Lua script
+        @Override
+        public String getName() {
+            return "dumpTrace";
+        }
+
+        // This method is executed when the Lua function is called
+        @Override
+        public int invoke(LuaState L) {
+            TraceBuffer.record(TracePoint.LUA_DUMP_TRACE, null);
+
+            // Ensure the path is a string
+            if (L.type(1) != LuaType.STRING) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.dumpTrace(path) path (string) expected, got " + L.typeName(1));
+                return 0;
+            }
+
+            try {
+                L.pushNumber(TraceBuffer.dump(new File(L.toString(1))));
+            } catch (IOException ex) {
+                Log.i(CORONA_LOG_TAG, "ERROR: supersonic.dumpTrace(path) can't write the trace: " + ex.getMessage());
+                L.pushNil();
+            }
 
             return 1;
         }
@@ -824,9 +1232,7 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
         // This is because this listener cannot be added to the CoronaEnvironment until after
         // this plugin has been required-in by Lua, which occurs after the onLoaded() event.
         // However, this method will be called when a 2nd Corona activity has been created.
-        if (fRuntimeTaskDispatcher == null) {
-            fRuntimeTaskDispatcher = new CoronaRuntimeTaskDispatcher(runtime);
-        }
+        // Its runtime joins the event fan-out once its Lua code calls supersonic.init().
     }
 
     /**
@@ -851,22 +1257,33 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
      */
     @Override
     public void onSuspended(CoronaRuntime runtime) {
+        // hold this runtime's events until it is resumed
+        fRuntimes.setSuspended(runtime.getLuaState(), true);
+
+        // the session ends here, save its telemetry
+        fTelemetryExporter.export();
+
         // Get the corona activity
         final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
 
         // If the corona activity & the supersonic instance are not null
         if (coronaActivity != null) {
+            final ActivityTracker.Ref kActivity = fActivities.track(coronaActivity);
+
             // Create a new runnable object to invoke our activity
             Runnable runnableActivity = new Runnable() {
                 @Override
                 public void run() {
-                    // Pause supersonic
-                    IronSource.onPause(coronaActivity);
+                    // Pause supersonic, unless the activity is gone by now
+                    Activity activity = kActivity.get();
+                    if (activity != null) {
+                        fBackend.onPause(activity);
+                    }
                 }
             };
 
-            // Run the activity on the uiThread
-            coronaActivity.runOnUiThread(runnableActivity);
+            // Run the activity on the uiThread, cancels a resume that hasn't run yet
+            fUiCommands.postPause(runnableActivity);
         }
     }
 
@@ -879,21 +1296,29 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
      */
     @Override
     public void onResumed(CoronaRuntime runtime) {
+        // deliver the events that arrived while suspended, in order
+        fRuntimes.setSuspended(runtime.getLuaState(), false);
+
         // Get the corona activity
         final CoronaActivity coronaActivity = CoronaEnvironment.getCoronaActivity();
 
         // If the corona activity & the supersonic instance are not null
         if (coronaActivity != null) {
+            final ActivityTracker.Ref kActivity = fActivities.track(coronaActivity);
+
             // Create a new runnable object to invoke our activity
             Runnable runnableActivity = new Runnable() {
                 @Override
                 public void run() {
-                    IronSource.onResume(coronaActivity);
+                    Activity activity = kActivity.get();
+                    if (activity != null) {
+                        fBackend.onResume(activity);
+                    }
                 }
             };
 
-            // Run the activity on the uiThread
-            coronaActivity.runOnUiThread(runnableActivity);
+            // Run the activity on the uiThread, cancels a pause that hasn't run yet
+            fUiCommands.postResume(runnableActivity);
         }
     }
 
@@ -909,10 +1334,15 @@ public class LuaLoader implements JavaFunction, CoronaRuntimeListener {
      */
     @Override
     public void onExiting(CoronaRuntime runtime) {
-        // Remove the Lua listener reference.
-        CoronaLua.deleteRef(runtime.getLuaState(), fListener);
-        fListener = CoronaLua.REFNIL;
+        // Remove this runtime's Lua listener references, the other runtimes keep receiving events.
+        // If it was the last one, events arriving from now on (e.g. rewards) are kept for the next runtime's listener
+        fRuntimes.detach(runtime.getLuaState());
+
+        // nobody is left to show a preloaded interstitial, the next supersonic.init() starts preloading again
+        if (fRuntimes.size() == 0) {
+            fInterstitialPreloader.stop();
+        }
 
-        fRuntimeTaskDispatcher = null;
+        fTelemetryExporter.export();
     }
 }
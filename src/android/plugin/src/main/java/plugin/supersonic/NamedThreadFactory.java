@@ -0,0 +1,34 @@
+//
+//  NamedThreadFactory.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates named daemon threads for the plugin's background executors, so they show up clearly in traces
+ * and never keep the process alive.
+ */
+final class NamedThreadFactory implements ThreadFactory {
+    private final String fName;
+    private final int fPriority;
+
+    NamedThreadFactory(String name, int priority) {
+        fName = name;
+        fPriority = priority;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, fName);
+        thread.setDaemon(true);
+        thread.setPriority(fPriority);
+        return thread;
+    }
+}
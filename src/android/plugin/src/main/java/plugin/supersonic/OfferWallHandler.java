@@ -0,0 +1,43 @@
+//
+//  OfferWallHandler.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.ironsource.mediationsdk.IronSource;
+
+final class OfferWallHandler extends AdUnitHandler {
+    OfferWallHandler(AdBackend backend, AvailabilityState.TransitionListener availabilityListener) {
+        super(AdType.OFFER_WALL, backend, availabilityListener);
+    }
+
+    @Override
+    IronSource.AD_UNIT sdkAdUnit() {
+        return IronSource.AD_UNIT.OFFERWALL;
+    }
+
+    @Override
+    boolean isAvailable() {
+        return backend.isOfferwallAvailable();
+    }
+
+    @Override
+    void load() {
+        // Offer walls are automatically loaded by the SDK
+        // the 'loaded' event is only sent if Lua hasn't been told already,
+        // the SDK is only asked if no callback has reported the availability yet
+        if (refresh()) {
+            availability.report(true);
+        }
+    }
+
+    @Override
+    void show(String placementId) {
+        backend.showOfferwall();
+    }
+}
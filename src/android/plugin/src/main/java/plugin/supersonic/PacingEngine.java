@@ -0,0 +1,286 @@
+//
+//  PacingEngine.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Client-side frequency capping and pacing for supersonic.show() (options.pacing).
+ * <p>
+ * Each rule limits the impressions of a placement per time window and sets a minimum interval between two of them.
+ * A show that breaks a rule is rejected on the Lua thread before anything is posted to the UI thread. The impression
+ * of an allowed show is counted once the SDK reports the ad as opened.
+ * <p>
+ * The counters live in a small memory-mapped file, so they survive process restarts without a database and cost a
+ * few buffer reads and writes per show. The file holds a header and a fixed table of slots, one per rule, found by
+ * open addressing on a 64 bit hash of the placement name:
+ * <pre>
+ *   header  int magic, int version, int slot count, int reserved
+ *   slot    long key hash (0 = free), long window start, long last impression, int impressions, int reserved
+ * </pre>
+ * Times are wall clock milliseconds, a clock that moved backwards restarts the window.
+ */
+final class PacingEngine {
+    static final int ALLOWED = 0;
+    static final int CAPPED = 1;    // too many impressions in the current window
+    static final int PACED = 2;     // too soon after the previous impression
+
+    static final int MAX_RULES = 64;
+
+    private static final int MAGIC = 0x53535043;    // "SSPC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 32;
+    private static final int SLOT_COUNT = MAX_RULES;
+    private static final int FILE_SIZE = HEADER_SIZE + SLOT_COUNT * SLOT_SIZE;
+
+    // slot field offsets
+    private static final int KEY = 0;
+    private static final int WINDOW_START = 8;
+    private static final int LAST_IMPRESSION = 16;
+    private static final int IMPRESSIONS = 24;
+
+    static final class Rule {
+        final int maxImpressions;       // 0 = no cap
+        final long windowMillis;
+        final long minIntervalMillis;   // 0 = no pacing
+
+        Rule(int maxImpressions, long windowMillis, long minIntervalMillis) {
+            this.maxImpressions = maxImpressions;
+            this.windowMillis = windowMillis;
+            this.minIntervalMillis = minIntervalMillis;
+        }
+    }
+
+    // set once by supersonic.init(), read on the Lua thread
+    private volatile HashMap<String, Rule> fRules = new HashMap<>();
+
+    // null until the counter file has been mapped, shows are allowed until then
+    private ByteBuffer fCounters;
+
+    // placement of the allowed show per ad type, counted once the SDK has opened the ad
+    private final String[] fPending = new String[AdType.VALUES.length];
+
+    void setRules(HashMap<String, Rule> rules) {
+        fRules = rules;
+    }
+
+    boolean hasRules() {
+        return !fRules.isEmpty();
+    }
+
+    /**
+     * Maps the counter file, creating or resetting it if needed. Slots of placements without a rule are freed and
+     * the others are inserted again, so no probe sequence runs into a freed slot before reaching its placement.
+     * Does file I/O, call it off the UI and Lua threads.
+     */
+    void open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer counters = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+
+            if (counters.getInt(0) != MAGIC || counters.getInt(4) != VERSION || counters.getInt(8) != SLOT_COUNT) {
+                for (int i = 0; i < FILE_SIZE; i += 8) {
+                    counters.putLong(i, 0);
+                }
+                counters.putInt(0, MAGIC);
+                counters.putInt(4, VERSION);
+                counters.putInt(8, SLOT_COUNT);
+            }
+
+            HashSet<Long> keys = new HashSet<>();
+            for (String placement : fRules.keySet()) {
+                keys.add(hash(placement));
+            }
+
+            // take out the slots still in use and clear the table
+            ArrayList<byte[]> kept = new ArrayList<>();
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                long key = counters.getLong(offset + KEY);
+                if (key != 0 && keys.contains(key)) {
+                    byte[] data = new byte[SLOT_SIZE];
+                    counters.position(offset);
+                    counters.get(data);
+                    kept.add(data);
+                }
+                for (int i = 0; i < SLOT_SIZE; i += 8) {
+                    counters.putLong(offset + i, 0);
+                }
+            }
+
+            // and put them back where a lookup finds them
+            for (byte[] data : kept) {
+                int offset = claim(counters, ByteBuffer.wrap(data).getLong(KEY));
+                counters.position(offset);
+                counters.put(data);
+            }
+
+            synchronized (this) {
+                fCounters = counters;
+            }
+        } finally {
+            // the mapping stays valid after the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Checks the rule of a placement for a show. An allowed show is remembered and its impression is counted by
+     * {@link #onOpened(AdType)}, so a show the SDK fails doesn't use up the placement's cap.
+     *
+     * @return Returns ALLOWED, CAPPED or PACED.
+     */
+    synchronized int tryShow(AdType type, String placement) {
+        int result = check(placement, System.currentTimeMillis());
+        if (result == ALLOWED) {
+            fPending[type.ordinal()] = placement;
+        }
+        return result;
+    }
+
+    // The SDK has opened the ad of the last allowed show, called on the SDK callback thread
+    synchronized void onOpened(AdType type) {
+        String placement = fPending[type.ordinal()];
+        if (placement != null) {
+            fPending[type.ordinal()] = null;
+            countImpression(placement, System.currentTimeMillis());
+        }
+    }
+
+    // The SDK couldn't show the ad, there is no impression to count
+    synchronized void onShowFailed(AdType type) {
+        fPending[type.ordinal()] = null;
+    }
+
+    // True if a show of the placement would be rejected right now, counts nothing
+    synchronized boolean isCapped(String placement) {
+        return check(placement, System.currentTimeMillis()) != ALLOWED;
+    }
+
+    // Applies the placement's rule at the given time, without changing the counters
+    synchronized int check(String placement, long now) {
+        Rule rule = fRules.get(placement);
+        ByteBuffer counters = fCounters;
+
+        if (rule == null || counters == null) {
+            return ALLOWED;
+        }
+
+        // no impression yet
+        int offset = find(counters, hash(placement));
+        if (offset < 0) {
+            return ALLOWED;
+        }
+
+        long lastImpression = counters.getLong(offset + LAST_IMPRESSION);
+
+        if (rule.minIntervalMillis > 0 && lastImpression > 0 && now >= lastImpression && now - lastImpression < rule.minIntervalMillis) {
+            return PACED;
+        }
+
+        if (rule.maxImpressions > 0 && !windowExpired(rule, counters.getLong(offset + WINDOW_START), now)
+                && counters.getInt(offset + IMPRESSIONS) >= rule.maxImpressions) {
+            return CAPPED;
+        }
+
+        return ALLOWED;
+    }
+
+    // Counts an impression of the placement at the given time, starting a new window if the last one is over
+    synchronized void countImpression(String placement, long now) {
+        Rule rule = fRules.get(placement);
+        ByteBuffer counters = fCounters;
+
+        if (rule == null || counters == null) {
+            return;
+        }
+
+        int offset = claim(counters, hash(placement));
+        if (offset < 0) {
+            return;
+        }
+
+        int impressions = counters.getInt(offset + IMPRESSIONS);
+        if (windowExpired(rule, counters.getLong(offset + WINDOW_START), now)) {
+            counters.putLong(offset + WINDOW_START, now);
+            impressions = 0;
+        }
+
+        counters.putInt(offset + IMPRESSIONS, impressions + 1);
+        counters.putLong(offset + LAST_IMPRESSION, now);
+    }
+
+    private static boolean windowExpired(Rule rule, long windowStart, long now) {
+        return windowStart == 0 || now < windowStart || now - windowStart >= rule.windowMillis;
+    }
+
+    // Offset of the placement's slot, -1 if it has none
+    private static int find(ByteBuffer counters, long key) {
+        int start = home(key);
+
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            int offset = HEADER_SIZE + ((start + i) & (SLOT_COUNT - 1)) * SLOT_SIZE;
+            long slotKey = counters.getLong(offset + KEY);
+
+            if (slotKey == key) {
+                return offset;
+            }
+            if (slotKey == 0) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    // Offset of the placement's slot, claiming a free one if needed, -1 if the table is full
+    private static int claim(ByteBuffer counters, long key) {
+        int start = home(key);
+
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            int offset = HEADER_SIZE + ((start + i) & (SLOT_COUNT - 1)) * SLOT_SIZE;
+            long slotKey = counters.getLong(offset + KEY);
+
+            if (slotKey == key) {
+                return offset;
+            }
+            if (slotKey == 0) {
+                counters.putLong(offset + KEY, key);
+                return offset;
+            }
+        }
+
+        return -1;
+    }
+
+    // First slot probed for a key
+    static int home(long key) {
+        return (int) (key ^ (key >>> 32)) & (SLOT_COUNT - 1);
+    }
+
+    // 64 bit FNV-1a, never 0 (free slot marker)
+    static long hash(String placement) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, n = placement.length(); i < n; i++) {
+            hash ^= placement.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash != 0 ? hash : 1;
+    }
+}
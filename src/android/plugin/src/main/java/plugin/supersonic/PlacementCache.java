@@ -0,0 +1,81 @@
+//
+//  PlacementCache.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placement info and capping status of one ad unit, cached for a limited time.
+ * <p>
+ * supersonic.getPlacementInfo() and supersonic.isPlacementCapped() are meant to be called from UI code every frame,
+ * so the SDK is only asked again once an entry is older than the TTL. Capping changes with every impression, so the
+ * whole cache is invalidated when an ad of this unit is closed or rewards the user. Unknown placements are cached too.
+ */
+final class PlacementCache {
+    static final long DEFAULT_TTL_MILLIS = 30 * 1000;
+
+    // expired entries are purged when the cache grows past this size
+    private static final int PURGE_THRESHOLD = 32;
+
+    private static final class Entry {
+        final PlacementInfo info;   // null if the SDK doesn't know the placement
+        final long expiresAt;
+
+        Entry(PlacementInfo info, long expiresAt) {
+            this.info = info;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final AdUnitHandler fHandler;
+    private final ConcurrentHashMap<String, Entry> fEntries = new ConcurrentHashMap<>();
+    private volatile long fTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MILLIS);
+
+    PlacementCache(AdUnitHandler handler) {
+        fHandler = handler;
+    }
+
+    void setTtlMillis(long ttlMillis) {
+        fTtlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        fEntries.clear();
+    }
+
+    // Returns null if the ad unit has no such placement
+    PlacementInfo get(String placementId) {
+        long now = System.nanoTime();
+        Entry entry = fEntries.get(placementId);
+
+        if (entry == null || now - entry.expiresAt >= 0) {
+            entry = new Entry(fHandler.queryPlacement(placementId), now + fTtlNanos);
+            fEntries.put(placementId, entry);
+
+            if (fEntries.size() > PURGE_THRESHOLD) {
+                purge(now);
+            }
+        }
+
+        return entry.info;
+    }
+
+    // Called from the SDK callback threads when an ad was closed or rewarded
+    void invalidate() {
+        fEntries.clear();
+    }
+
+    private void purge(long now) {
+        for (Iterator<Entry> it = fEntries.values().iterator(); it.hasNext(); ) {
+            if (now - it.next().expiresAt >= 0) {
+                it.remove();
+            }
+        }
+    }
+}
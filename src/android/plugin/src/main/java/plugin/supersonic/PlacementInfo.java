@@ -0,0 +1,47 @@
+//
+//  PlacementInfo.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Immutable snapshot of a placement as reported by the SDK, returned by supersonic.getPlacementInfo().
+ */
+final class PlacementInfo {
+    final String name;
+    final String rewardName;    // rewarded video only
+    final int rewardAmount;     // rewarded video only
+    final boolean capped;
+
+    PlacementInfo(String name, String rewardName, int rewardAmount, boolean capped) {
+        this.name = name;
+        this.rewardName = rewardName;
+        this.rewardAmount = rewardAmount;
+        this.capped = capped;
+    }
+
+    // { name, rewardName, rewardAmount, isCapped }
+    void push(LuaState L) {
+        L.newTable(0, 4);
+
+        if (name != null) {
+            L.pushString(name);
+            L.setField(-2, "name");
+        }
+        if (rewardName != null) {
+            L.pushString(rewardName);
+            L.setField(-2, "rewardName");
+            L.pushInteger(rewardAmount);
+            L.setField(-2, "rewardAmount");
+        }
+        L.pushBoolean(capped);
+        L.setField(-2, "isCapped");
+    }
+}
@@ -0,0 +1,192 @@
+//
+//  RequestRegistry.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.Arrays;
+
+import com.ansca.corona.CoronaLua;
+import com.naef.jnlua.LuaState;
+
+/**
+ * Per-call listeners of supersonic.load() and supersonic.show(), keyed by request id.
+ * <p>
+ * An event of an ad type with pending requests goes only to their listeners instead of the listener passed to
+ * supersonic.init(). 'loaded' answers loads and 'displayed' through 'closed' answer shows. 'failed' answers the
+ * pending shows of its ad type if it reports a failed show ({@link AdEvent#showFailure}), the pending loads
+ * otherwise, availability changes included. A request ends, and its Lua reference is released, with its final
+ * event: 'loaded' or 'failed' for a load, 'closed' or 'failed' for a show. Several pending requests of one kind
+ * and ad type are all answered by the same event.
+ * <p>
+ * The final events of the pending requests are handed to the runtime's {@link EventDispatcher}, which lets them
+ * through whatever supersonic.setEventFilter() says, so no request waits forever.
+ * <p>
+ * Only used on the Lua thread.
+ */
+final class RequestRegistry {
+    /**
+     * The Lua side of a request listener.
+     */
+    interface Listeners {
+        // Pushes the event table, with the request id, and calls the listener
+        void call(LuaState L, int ref, AdEvent event, int requestId, LuaEventTables tables) throws Exception;
+
+        // Lets Lua collect the listener
+        void release(LuaState L, int ref);
+    }
+
+    // listeners called through CoronaLua
+    static final Listeners CORONA_LISTENERS = new Listeners() {
+        @Override
+        public void call(LuaState L, int ref, AdEvent event, int requestId, LuaEventTables tables) throws Exception {
+            LuaEventWriter.write(L, event, tables);
+            L.pushNumber(requestId);
+            L.setField(-2, LuaEventWriter.EVENT_REQUEST_ID_KEY);
+
+            CoronaLua.dispatchEvent(L, ref, 0);
+        }
+
+        @Override
+        public void release(LuaState L, int ref) {
+            CoronaLua.deleteRef(L, ref);
+        }
+    };
+
+    private static final int SHOW = 1;      // kind bit, clear for loads
+
+    private final EventDispatcher fEvents;
+    private final Listeners fListeners;
+
+    // request id, listener reference and (ad type << 1 | SHOW) kind, in request order (ascending ids)
+    private int[] fIds = new int[4];
+    private int[] fRefs = new int[4];
+    private int[] fKinds = new int[4];
+    private int fSize;
+
+    private int fNextId = 1;
+
+    RequestRegistry(EventDispatcher events) {
+        this(events, CORONA_LISTENERS);
+    }
+
+    RequestRegistry(EventDispatcher events, Listeners listeners) {
+        fEvents = events;
+        fListeners = listeners;
+    }
+
+    // Takes ownership of the listener reference and returns the request id
+    int register(int ref, AdType type, boolean show) {
+        if (fSize == fIds.length) {
+            fIds = Arrays.copyOf(fIds, fSize * 2);
+            fRefs = Arrays.copyOf(fRefs, fSize * 2);
+            fKinds = Arrays.copyOf(fKinds, fSize * 2);
+        }
+
+        int id = fNextId++;
+        fIds[fSize] = id;
+        fRefs[fSize] = ref;
+        fKinds[fSize] = type.ordinal() << 1 | (show ? SHOW : 0);
+        fSize++;
+
+        updateRequestedEvents();
+        return id;
+    }
+
+    int size() {
+        return fSize;
+    }
+
+    /**
+     * Calls the listeners of the requests answered by an event.
+     *
+     * @param tables The runtime's reusable event tables, null for a new table per listener.
+     * @return Returns false if no request matched, the event is then for the supersonic.init() listener.
+     */
+    boolean deliver(LuaState L, AdEvent event, LuaEventTables tables) {
+        if (event.type == null || fSize == 0) {
+            return false;
+        }
+
+        boolean show;
+        if (event.phase == AdPhase.LOADED) {
+            show = false;
+        } else if (event.phase == AdPhase.FAILED) {
+            show = event.showFailure;
+        } else {
+            show = true;
+        }
+
+        int kind = event.type.ordinal() << 1 | (show ? SHOW : 0);
+        boolean last = event.phase == AdPhase.LOADED || event.phase == AdPhase.FAILED || event.phase == AdPhase.CLOSED;
+        boolean delivered = false;
+
+        // requests made by the listeners themselves are not answered by this event
+        int endId = fNextId;
+
+        int i = 0;
+        while (i < fSize && fIds[i] < endId) {
+            if (fKinds[i] != kind) {
+                i++;
+                continue;
+            }
+
+            int id = fIds[i];
+            int ref = fRefs[i];
+            if (last) {
+                removeAt(i);
+            } else {
+                i++;
+            }
+
+            try {
+                fListeners.call(L, ref, event, id, tables);
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+
+            if (last) {
+                fListeners.release(L, ref);
+            }
+            delivered = true;
+        }
+
+        if (delivered && last) {
+            updateRequestedEvents();
+        }
+        return delivered;
+    }
+
+    // Drops every pending request, the runtime owning the references is going away
+    void clear(LuaState L) {
+        for (int i = 0; i < fSize; i++) {
+            fListeners.release(L, fRefs[i]);
+        }
+        fSize = 0;
+        updateRequestedEvents();
+    }
+
+    private void removeAt(int index) {
+        int moved = fSize - index - 1;
+        System.arraycopy(fIds, index + 1, fIds, index, moved);
+        System.arraycopy(fRefs, index + 1, fRefs, index, moved);
+        System.arraycopy(fKinds, index + 1, fKinds, index, moved);
+        fSize--;
+    }
+
+    // Tells the dispatcher which final events the pending requests wait for
+    private void updateRequestedEvents() {
+        long requested = 0;
+        for (int i = 0; i < fSize; i++) {
+            AdType type = AdType.VALUES[fKinds[i] >> 1];
+            requested |= EventDispatcher.bit(AdPhase.FAILED, type);
+            requested |= EventDispatcher.bit((fKinds[i] & SHOW) != 0 ? AdPhase.CLOSED : AdPhase.LOADED, type);
+        }
+        fEvents.setRequestedEvents(requested);
+    }
+}
@@ -0,0 +1,66 @@
+//
+//  RewardDispatcher.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.List;
+
+/**
+ * Sends "rewarded" events, recording each reward in the {@link RewardLedger} first so it can be
+ * replayed if the app dies before the Lua listener has seen it.
+ */
+final class RewardDispatcher {
+    private final EventSink fEvents;
+    private final RewardLedger fLedger;
+
+    // options.jsonRewards, set by supersonic.init() before the SDK is started
+    private volatile boolean fJsonRewards;
+
+    RewardDispatcher(EventSink events, RewardLedger ledger) {
+        fEvents = events;
+        fLedger = ledger;
+    }
+
+    void setJsonRewards(boolean jsonRewards) {
+        fJsonRewards = jsonRewards;
+    }
+
+    // False if Lua has filtered out the rewards of an ad type, checked before the reward's payload is built
+    // a reward Lua has filtered out is not kept for replay either
+    boolean accepts(AdType type) {
+        return fEvents.accepts(AdPhase.REWARDED, type);
+    }
+
+    // Called on the SDK callback thread, after accepts()
+    void dispatch(AdType type, RewardPayload reward) {
+        long id = fLedger.record(type, reward);
+        fEvents.dispatch(newEvent(type, reward, id, false));
+    }
+
+    // Sends the rewards left unacknowledged by a previous session, marked as replays
+    // RuntimeRegistry acknowledges a replay Lua has filtered out, like one a listener has seen
+    void replay(List<RewardLedger.Entry> entries) {
+        for (RewardLedger.Entry entry : entries) {
+            fEvents.dispatch(newEvent(entry.type, entry.reward, entry.id, true));
+        }
+    }
+
+    private AdEvent newEvent(AdType type, RewardPayload reward, long id, boolean replayed) {
+        AdEvent event;
+        if (fJsonRewards) {
+            event = fEvents.obtain().set(AdPhase.REWARDED, type, false, RewardJson.encode(reward));
+        } else {
+            event = fEvents.obtain().set(AdPhase.REWARDED, type, false, null);
+            event.payload = reward;
+        }
+        event.ledgerId = id;
+        event.replayed = replayed;
+        return event;
+    }
+}
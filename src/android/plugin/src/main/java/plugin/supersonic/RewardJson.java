@@ -0,0 +1,68 @@
+//
+//  RewardJson.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import org.json.JSONObject;
+
+import com.ironsource.mediationsdk.model.Placement;
+
+/**
+ * JSON encoding of reward payloads, sent as event.response on 'rewarded' events.
+ */
+final class RewardJson {
+    private RewardJson() {
+    }
+
+    // Rewarded video placement info
+    static String placement(Placement placement) {
+        return placement(placement.getPlacementName(), placement.getRewardName(), placement.getRewardAmount());
+    }
+
+    private static String placement(String placementName, String rewardName, int rewardAmount) {
+        // The placement info object
+        JSONObject placementInfo = new JSONObject();
+
+        // Get the placement info
+        try {
+            placementInfo.putOpt("placementName", placementName);
+            placementInfo.putOpt("rewardName", rewardName);
+            placementInfo.putOpt("rewardAmount", rewardAmount);
+        } catch (Exception ex) {
+            //ex.printStackTrace();
+        }
+
+        return placementInfo.toString();
+    }
+
+    // Offer wall credit info
+    static String credits(int credits, int totalCredits, boolean totalCreditsFlag) {
+        // The credit info object
+        JSONObject creditInfo = new JSONObject();
+
+        // Get the credit info
+        try {
+            creditInfo.putOpt("credits", credits);
+            creditInfo.putOpt("totalCredits", totalCredits);
+            creditInfo.putOpt("totalCreditsFlag", totalCreditsFlag);
+        } catch (Exception ex) {
+            //ex.printStackTrace();
+        }
+
+        return creditInfo.toString();
+    }
+
+    // Either of the above, for a reward kept as a payload
+    static String encode(RewardPayload reward) {
+        if (reward.isCredit) {
+            return credits(reward.credits, reward.totalCredits, reward.totalCreditsFlag);
+        }
+        return placement(reward.placementName, reward.rewardName, reward.rewardAmount);
+    }
+}
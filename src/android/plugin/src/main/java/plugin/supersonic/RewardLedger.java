@@ -0,0 +1,352 @@
+//
+//  RewardLedger.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+
+/**
+ * Append-only log of rewards that have not reached the Lua listener yet.
+ * <p>
+ * A reward is recorded before its event is dispatched and acknowledged once the listener has returned. Rewards
+ * still unacknowledged when the process ends (activity exiting, crash, kill) are returned by {@link #open(File)}
+ * on the next supersonic.init() and replayed.
+ * <p>
+ * Records are encoded and written on a dedicated thread, so the SDK callback thread only assigns an id. Writes go
+ * through a buffer and are synced to disk in batches, at most {@link #SYNC_DELAY_MILLIS} after the first record
+ * of a batch. Every record is framed as
+ * <pre>
+ *   int body length, int CRC32 of the body, body
+ *   body  byte kind, long id, then for REWARD: long time, byte ad type, byte isCredit, int rewardAmount or credits,
+ *         int totalCredits, byte totalCreditsFlag, string placementName, string rewardName
+ *   string  short UTF-8 length (-1 for null), bytes, cut to MAX_STRING_SIZE bytes at a character boundary
+ * </pre>
+ * so a record torn by a crash ends the log. The log is compacted to the unacknowledged rewards when it is opened.
+ */
+final class RewardLedger {
+    private static final String CORONA_LOG_TAG = "Corona";
+
+    static final long SYNC_DELAY_MILLIS = 100;
+
+    private static final byte KIND_REWARD = 1;
+    private static final byte KIND_ACK = 2;
+
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    static final int MAX_STRING_SIZE = 255;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * A reward read back from the log.
+     */
+    static final class Entry {
+        final long id;
+        final long timeMillis;
+        final AdType type;
+        final RewardPayload reward;
+
+        Entry(long id, long timeMillis, AdType type, RewardPayload reward) {
+            this.id = id;
+            this.timeMillis = timeMillis;
+            this.type = type;
+            this.reward = reward;
+        }
+    }
+
+    private final AtomicLong fLastId = new AtomicLong();
+    private ScheduledExecutorService fWriter;
+
+    // writer thread only
+    private FileChannel fChannel;
+    private final ByteBuffer fBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 fCrc = new CRC32();
+    private boolean fSyncScheduled;
+
+    private volatile boolean fOpen;
+
+    private final Runnable fSync = new Runnable() {
+        @Override
+        public void run() {
+            fSyncScheduled = false;
+            sync();
+        }
+    };
+
+    boolean isOpen() {
+        return fOpen;
+    }
+
+    /**
+     * Opens the log, compacts it and returns the rewards that were never acknowledged, oldest first.
+     * Does file I/O, call it off the UI and Lua threads.
+     */
+    synchronized List<Entry> open(File file) throws IOException {
+        if (fOpen) {
+            return new ArrayList<>();
+        }
+
+        // read everything up to the first torn or corrupt record
+        LinkedHashMap<Long, Entry> pending = new LinkedHashMap<>();
+        long lastId = 0;
+
+        if (file.exists()) {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                ByteBuffer data = ByteBuffer.allocate((int) in.length());
+                FileChannel channel = in.getChannel();
+                while (data.hasRemaining() && channel.read(data) >= 0) {
+                    // read the whole file
+                }
+                data.flip();
+
+                CRC32 crc = new CRC32();
+                while (data.remaining() >= FRAME_HEADER_SIZE) {
+                    int length = data.getInt();
+                    int checksum = data.getInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE || length > data.remaining()) {
+                        break;
+                    }
+
+                    crc.reset();
+                    crc.update(data.array(), data.arrayOffset() + data.position(), length);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+
+                    int end = data.position() + length;
+                    byte kind = data.get();
+                    long id = data.getLong();
+                    lastId = Math.max(lastId, id);
+
+                    if (kind == KIND_REWARD) {
+                        Entry entry = readReward(data, id);
+                        if (entry != null) {
+                            pending.put(id, entry);
+                        }
+                    } else if (kind == KIND_ACK) {
+                        pending.remove(id);
+                    }
+                    data.position(end);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        fLastId.set(lastId);
+
+        // rewrite the log with the pending rewards only, then swap it in
+        File compacted = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+        try {
+            out.setLength(0);
+            fChannel = out.getChannel();
+            for (Entry entry : pending.values()) {
+                append(KIND_REWARD, entry.id, entry.timeMillis, entry.type, entry.reward);
+            }
+            sync();
+        } finally {
+            out.close();
+        }
+        if (!compacted.renameTo(file)) {
+            throw new IOException("can't replace " + file);
+        }
+
+        fChannel = new RandomAccessFile(file, "rw").getChannel();
+        fChannel.position(fChannel.size());
+        fWriter = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("supersonic-ledger", Thread.MIN_PRIORITY));
+        fOpen = true;
+
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Records a reward before it is dispatched, safe from any thread and never waits for the disk.
+     *
+     * @return Returns the id to acknowledge once Lua has received the reward, 0 if the ledger isn't open.
+     */
+    long record(final AdType type, final RewardPayload reward) {
+        if (!fOpen) {
+            return 0;
+        }
+
+        final long id = fLastId.incrementAndGet();
+        final long timeMillis = System.currentTimeMillis();
+
+        fWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(KIND_REWARD, id, timeMillis, type, reward);
+                scheduleSync();
+            }
+        });
+
+        return id;
+    }
+
+    /**
+     * Writes out and syncs every record made so far, without waiting for the batch. Blocks until the disk has them,
+     * call it off the UI and Lua threads.
+     */
+    void flush() throws InterruptedException {
+        if (!fOpen) {
+            return;
+        }
+
+        try {
+            fWriter.submit(new Runnable() {
+                @Override
+                public void run() {
+                    sync();
+                }
+            }).get();
+        } catch (ExecutionException ex) {
+            Log.i(CORONA_LOG_TAG, "ERROR: supersonic reward ledger sync failed: " + ex.getCause());
+        }
+    }
+
+    // Called on the Lua thread once the listener has returned
+    void acknowledge(final long id) {
+        if (!fOpen || id == 0) {
+            return;
+        }
+
+        fWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(KIND_ACK, id, 0, null, null);
+                scheduleSync();
+            }
+        });
+    }
+
+    // Writer thread: encodes one record into the buffer, writing the buffer out first if it's full
+    private void append(byte kind, long id, long timeMillis, AdType type, RewardPayload reward) {
+        if (fBuffer.remaining() < MAX_RECORD_SIZE) {
+            write();
+        }
+
+        int start = fBuffer.position();
+        fBuffer.position(start + FRAME_HEADER_SIZE);
+        fBuffer.put(kind);
+        fBuffer.putLong(id);
+
+        if (kind == KIND_REWARD) {
+            fBuffer.putLong(timeMillis);
+            fBuffer.put((byte) type.ordinal());
+            fBuffer.put((byte) (reward.isCredit ? 1 : 0));
+            fBuffer.putInt(reward.isCredit ? reward.credits : reward.rewardAmount);
+            fBuffer.putInt(reward.totalCredits);
+            fBuffer.put((byte) (reward.totalCreditsFlag ? 1 : 0));
+            putString(reward.placementName);
+            putString(reward.rewardName);
+        }
+
+        int length = fBuffer.position() - start - FRAME_HEADER_SIZE;
+        fCrc.reset();
+        fCrc.update(fBuffer.array(), fBuffer.arrayOffset() + start + FRAME_HEADER_SIZE, length);
+        fBuffer.putInt(start, length);
+        fBuffer.putInt(start + 4, (int) fCrc.getValue());
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            fBuffer.putShort((short) -1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF_8);
+        // names are short, anything longer is cut to keep records bounded
+        int length = Math.min(bytes.length, MAX_STRING_SIZE);
+        // at the start of a character, not between the bytes of one
+        while (length < bytes.length && (bytes[length] & 0xc0) == 0x80) {
+            length--;
+        }
+        fBuffer.putShort((short) length);
+        fBuffer.put(bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer data) {
+        int length = data.getShort();
+        if (length < 0) {
+            return null;
+        }
+
+        String value = new String(data.array(), data.arrayOffset() + data.position(), length, UTF_8);
+        data.position(data.position() + length);
+        return value;
+    }
+
+    private static Entry readReward(ByteBuffer data, long id) {
+        long timeMillis = data.getLong();
+        int typeIndex = data.get();
+        boolean isCredit = data.get() != 0;
+        int amount = data.getInt();
+        int totalCredits = data.getInt();
+        boolean totalCreditsFlag = data.get() != 0;
+        String placementName = getString(data);
+        String rewardName = getString(data);
+
+        if (typeIndex < 0 || typeIndex >= AdType.VALUES.length) {
+            return null;
+        }
+
+        RewardPayload reward = isCredit
+                ? new RewardPayload(null, null, 0, true, amount, totalCredits, totalCreditsFlag)
+                : new RewardPayload(placementName, rewardName, amount, false, 0, 0, false);
+        return new Entry(id, timeMillis, AdType.VALUES[typeIndex], reward);
+    }
+
+    // Writer thread: batches the fsync of records appended in quick succession
+    private void scheduleSync() {
+        if (!fSyncScheduled) {
+            fSyncScheduled = true;
+            fWriter.schedule(fSync, SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void write() {
+        fBuffer.flip();
+        try {
+            while (fBuffer.hasRemaining()) {
+                fChannel.write(fBuffer);
+            }
+        } catch (IOException ex) {
+            Log.i(CORONA_LOG_TAG, "ERROR: supersonic reward ledger write failed: " + ex.getMessage());
+        }
+        fBuffer.clear();
+    }
+
+    private void sync() {
+        write();
+        try {
+            fChannel.force(false);
+        } catch (IOException ex) {
+            Log.i(CORONA_LOG_TAG, "ERROR: supersonic reward ledger sync failed: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+//
+//  RewardPayload.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.LuaType;
+
+import com.ironsource.mediationsdk.model.Placement;
+
+/**
+ * Reward info of a 'rewarded' event, pushed as a nested table in event.response.
+ * <p>
+ * Saves the JSON encoding on the SDK thread and the json.decode on the Lua thread. With the jsonRewards option of
+ * supersonic.init() event.response stays the JSON string built by {@link RewardJson}. Rewards are also what
+ * {@link RewardLedger} persists until Lua has received them.
+ */
+final class RewardPayload implements AdEvent.Payload {
+    private static final String EVENT_RESPONSE_KEY = "response";
+
+    // rewarded video
+    final String placementName;
+    final String rewardName;
+    final int rewardAmount;
+
+    // offer wall
+    final boolean isCredit;
+    final int credits;
+    final int totalCredits;
+    final boolean totalCreditsFlag;
+
+    RewardPayload(String placementName, String rewardName, int rewardAmount, boolean isCredit, int credits, int totalCredits, boolean totalCreditsFlag) {
+        this.placementName = placementName;
+        this.rewardName = rewardName;
+        this.rewardAmount = rewardAmount;
+        this.isCredit = isCredit;
+        this.credits = credits;
+        this.totalCredits = totalCredits;
+        this.totalCreditsFlag = totalCreditsFlag;
+    }
+
+    // Rewarded video placement info
+    static RewardPayload placement(Placement placement) {
+        return new RewardPayload(placement.getPlacementName(), placement.getRewardName(), placement.getRewardAmount(), false, 0, 0, false);
+    }
+
+    // Offer wall credit info
+    static RewardPayload credits(int credits, int totalCredits, boolean totalCreditsFlag) {
+        return new RewardPayload(null, null, 0, true, credits, totalCredits, totalCreditsFlag);
+    }
+
+    @Override
+    public void push(LuaState L) {
+        // the response table of a reused event table (LuaEventTables) is updated in place
+        L.getField(-1, EVENT_RESPONSE_KEY);
+        if (L.type(-1) != LuaType.TABLE) {
+            L.pop(1);
+            L.newTable(0, 3);
+        }
+
+        // same keys as the JSON object
+        if (isCredit) {
+            L.pushInteger(credits);
+            L.setField(-2, "credits");
+            L.pushInteger(totalCredits);
+            L.setField(-2, "totalCredits");
+            L.pushBoolean(totalCreditsFlag);
+            L.setField(-2, "totalCreditsFlag");
+        } else {
+            pushString(L, placementName);
+            L.setField(-2, "placementName");
+            pushString(L, rewardName);
+            L.setField(-2, "rewardName");
+            L.pushInteger(rewardAmount);
+            L.setField(-2, "rewardAmount");
+        }
+
+        L.setField(-2, EVENT_RESPONSE_KEY);
+    }
+
+    // nil clears a name left by an earlier reward
+    private static void pushString(LuaState L, String value) {
+        if (value != null) {
+            L.pushString(value);
+        } else {
+            L.pushNil();
+        }
+    }
+}
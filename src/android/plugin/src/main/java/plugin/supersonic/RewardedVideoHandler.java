@@ -0,0 +1,54 @@
+//
+//  RewardedVideoHandler.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.ironsource.mediationsdk.IronSource;
+import com.ironsource.mediationsdk.model.Placement;
+
+final class RewardedVideoHandler extends AdUnitHandler {
+    RewardedVideoHandler(AdBackend backend, AvailabilityState.TransitionListener availabilityListener) {
+        super(AdType.REWARDED_VIDEO, backend, availabilityListener);
+    }
+
+    @Override
+    IronSource.AD_UNIT sdkAdUnit() {
+        return IronSource.AD_UNIT.REWARDED_VIDEO;
+    }
+
+    @Override
+    boolean isAvailable() {
+        return backend.isRewardedVideoAvailable();
+    }
+
+    @Override
+    void load() {
+        // rewarded videos are automatically loaded by the SDK
+        // the 'loaded' event is only sent if Lua hasn't been told already,
+        // the SDK is only asked if no callback has reported the availability yet
+        if (refresh()) {
+            availability.report(true);
+        }
+    }
+
+    @Override
+    void show(String placementId) {
+        backend.showRewardedVideo(placementId);
+    }
+
+    @Override
+    PlacementInfo queryPlacement(String placementId) {
+        Placement placement = backend.getRewardedVideoPlacementInfo(placementId);
+        if (placement == null) {
+            return null;
+        }
+        return new PlacementInfo(placement.getPlacementName(), placement.getRewardName(), placement.getRewardAmount(),
+                backend.isRewardedVideoPlacementCapped(placementId));
+    }
+}
@@ -0,0 +1,336 @@
+//
+//  RuntimeRegistry.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.Arrays;
+
+import com.ansca.corona.CoronaLua;
+import com.ansca.corona.CoronaRuntime;
+import com.ansca.corona.CoronaRuntimeTask;
+import com.ansca.corona.CoronaRuntimeTaskDispatcher;
+import com.naef.jnlua.LuaState;
+
+/**
+ * The Corona runtimes that have called supersonic.init(), each with its own listener, task dispatcher, event queue
+ * and load/show listeners.
+ * <p>
+ * A runtime is keyed by its LuaState, the one object Lua functions and runtime events both hand over. SDK events
+ * are fanned out to every runtime: the runtimes live in a copy-on-write array, so the callback threads read it
+ * without a lock and copy each event into the {@link EventDispatcher} of every runtime that wants it. Attaching
+ * and detaching a runtime (init, onExiting) replaces the array under a lock and leaves the other runtimes alone.
+ * <p>
+ * The array is never empty. When the last runtime exits its entry stays, detached, and keeps the events that
+ * arrive until the next runtime attaches and takes it over.
+ */
+final class RuntimeRegistry implements EventSink {
+    /**
+     * One Corona runtime: the Lua side of its event pipeline.
+     */
+    final class Entry implements EventDispatcher.Target {
+        // events are counted once by the registry, not per runtime
+        final EventDispatcher events = new EventDispatcher(this, null);
+
+        // listeners passed to supersonic.load() and supersonic.show(), this runtime's Lua thread only
+        final RequestRegistry requests = new RequestRegistry(events);
+
+        private volatile LuaState fLuaState;
+        private volatile CoronaRuntimeTaskDispatcher fTaskDispatcher;
+        private volatile int fListener = CoronaLua.REFNIL;
+
+        // events are held in the event queue while the runtime is suspended
+        private volatile boolean fSuspended;
+
+        // options.reuseEventTables, null for a new table per event, Lua thread only
+        private LuaEventTables fTables;
+
+        // Empties the event queue into Lua
+        private final CoronaRuntimeTask fDrainTask = new CoronaRuntimeTask() {
+            @Override
+            public void executeUsing(CoronaRuntime runtime) {
+                events.drain(runtime.getLuaState());
+            }
+        };
+
+        @Override
+        public boolean isAttached() {
+            return fTaskDispatcher != null && fListener != CoronaLua.REFNIL && !fSuspended;
+        }
+
+        @Override
+        public void scheduleDrain() {
+            CoronaRuntimeTaskDispatcher dispatcher = fTaskDispatcher;
+
+            if (dispatcher != null) {
+                dispatcher.send(fDrainTask);
+            }
+        }
+
+        // Push an event table onto the Lua stack and call the listener (runs on the Lua thread)
+        @Override
+        public void deliver(LuaState L, AdEvent event) {
+            try {
+                // events answering a load() or show() with a listener only go to that listener
+                // an event only let through for a request that has ended meanwhile goes nowhere
+                if (!requests.deliver(L, event, fTables) && events.passesFilter(event.phase, event.type)) {
+                    LuaEventWriter.write(L, event, fTables);
+
+                    CoronaLua.dispatchEvent(L, fListener, 0);
+                }
+
+                // a listener has the reward, it won't be replayed
+                fLedger.acknowledge(event.ledgerId);
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        // Switches event table reuse on or off, called on the runtime's Lua thread
+        void setReuseEventTables(LuaState L, boolean reuse) {
+            if (reuse && fTables == null) {
+                fTables = new LuaEventTables();
+            } else if (!reuse && fTables != null) {
+                fTables.release(L);
+                fTables = null;
+            }
+        }
+    }
+
+    private final AdMetrics fMetrics;
+    private final RewardLedger fLedger;
+
+    // events handed to dispatch(AdEvent), copied into each runtime's own pool
+    private final AdEventPool fPool = new AdEventPool();
+
+    // copy-on-write, only replaced while holding the registry's lock
+    private volatile Entry[] fEntries = new Entry[] { new Entry() };
+
+    RuntimeRegistry(AdMetrics metrics, RewardLedger ledger) {
+        fMetrics = metrics;
+        fLedger = ledger;
+    }
+
+    /**
+     * Attaches the runtime of a Lua state and starts delivering its events. The first runtime takes over the
+     * events that waited for one.
+     *
+     * @param listener Reference to the supersonic.init() listener, owned by the entry from now on.
+     */
+    synchronized Entry attach(LuaState L, int listener) {
+        Entry[] entries = fEntries;
+        Entry entry;
+
+        if (entries.length == 1 && entries[0].fLuaState == null) {
+            entry = entries[0];
+        } else {
+            entry = new Entry();
+            Entry[] grown = Arrays.copyOf(entries, entries.length + 1);
+            grown[entries.length] = entry;
+            fEntries = grown;
+        }
+
+        entry.fTaskDispatcher = new CoronaRuntimeTaskDispatcher(L);
+        entry.fListener = listener;
+        entry.fSuspended = false;
+        entry.fLuaState = L;
+
+        // deliver the events that arrived before a listener was set
+        entry.events.flush();
+
+        return entry;
+    }
+
+    /**
+     * Releases the runtime's Lua references and stops delivering to it, called on its Lua thread.
+     * Delivery to the other runtimes goes on, the last runtime's events are kept for the next one.
+     */
+    synchronized void detach(LuaState L) {
+        Entry[] entries = fEntries;
+        int index = indexOf(entries, L);
+        if (index < 0) {
+            return;
+        }
+
+        Entry entry = entries[index];
+        CoronaLua.deleteRef(L, entry.fListener);
+        entry.requests.clear(L);
+        entry.setReuseEventTables(L, false);
+
+        entry.fLuaState = null;
+        entry.fTaskDispatcher = null;
+        entry.fListener = CoronaLua.REFNIL;
+        entry.fSuspended = false;
+        entry.events.detach();
+
+        if (entries.length > 1) {
+            // the other runtimes have their own copies of the pending events
+            Entry[] shrunk = new Entry[entries.length - 1];
+            System.arraycopy(entries, 0, shrunk, 0, index);
+            System.arraycopy(entries, index + 1, shrunk, index, shrunk.length - index);
+            fEntries = shrunk;
+        } else {
+            // kept for the next runtime, which hasn't chosen a filter yet
+            entry.events.setFilter(EventDispatcher.ALL_EVENTS);
+        }
+    }
+
+    // The attached runtime of a Lua state, null before its supersonic.init()
+    Entry get(LuaState L) {
+        Entry[] entries = fEntries;
+        int index = indexOf(entries, L);
+        return index >= 0 ? entries[index] : null;
+    }
+
+    // Number of attached runtimes
+    int size() {
+        Entry[] entries = fEntries;
+        return entries[0].fLuaState != null ? entries.length : 0;
+    }
+
+    // The event queue of a Lua state's runtime, or the one holding events until a runtime attaches
+    EventDispatcher events(LuaState L) {
+        Entry entry = get(L);
+        return entry != null ? entry.events : fEntries[0].events;
+    }
+
+    void setSuspended(LuaState L, boolean suspended) {
+        Entry entry = get(L);
+        if (entry == null) {
+            return;
+        }
+
+        entry.fSuspended = suspended;
+        if (!suspended) {
+            // deliver the events that arrived while suspended, in order
+            entry.events.flush();
+        }
+    }
+
+    private static int indexOf(Entry[] entries, LuaState L) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].fLuaState == L) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // -------------------------------------------------------------------
+    // Fan-out, called from any thread
+    // -------------------------------------------------------------------
+
+    @Override
+    public boolean accepts(AdPhase phase, AdType type) {
+        Entry[] entries = fEntries;
+        for (Entry entry : entries) {
+            if (entry.events.wants(phase, type)) {
+                // dispatch() counts the event in the runtimes that filter it out
+                return true;
+            }
+        }
+
+        // the event stops here, every runtime counts it as filtered and the metrics count it once
+        for (Entry entry : entries) {
+            entry.events.accepts(phase, type);
+        }
+        fMetrics.onEvent(phase, type);
+        return false;
+    }
+
+    @Override
+    public AdEvent obtain() {
+        return fPool.obtain();
+    }
+
+    @Override
+    public void dispatch(AdEvent event) {
+        // counted before the filters, so load and show outcomes are measured even if no runtime wants them
+        fMetrics.onEvent(event.phase, event.type);
+        boolean delivered = false;
+
+        for (Entry entry : fEntries) {
+            EventDispatcher events = entry.events;
+            if (events.accepts(event.phase, event.type)) {
+                events.dispatch(events.obtain().copy(event));
+                delivered = true;
+            }
+        }
+
+        if (!delivered) {
+            // a reward replayed into a filter that drops it would otherwise come back on every init
+            fLedger.acknowledge(event.ledgerId);
+        }
+        fPool.recycle(event);
+    }
+
+    @Override
+    public void dispatch(AdPhase phase, AdType type, boolean isError, String response) {
+        fMetrics.onEvent(phase, type);
+
+        for (Entry entry : fEntries) {
+            EventDispatcher events = entry.events;
+            if (events.accepts(phase, type)) {
+                events.dispatch(events.obtain().set(phase, type, isError, response));
+            }
+        }
+    }
+
+    @Override
+    public void dispatch(AdPhase phase, AdType type) {
+        dispatch(phase, type, false, null);
+    }
+
+    @Override
+    public void dispatchShowFailure(AdType type, String response) {
+        fMetrics.onEvent(AdPhase.FAILED, type);
+
+        for (Entry entry : fEntries) {
+            EventDispatcher events = entry.events;
+            if (events.accepts(AdPhase.FAILED, type)) {
+                events.dispatchShowFailure(type, response);
+            }
+        }
+    }
+
+    // An event answering a call of one runtime (load, show), only that runtime gets it
+    void dispatch(Entry entry, AdPhase phase, AdType type, boolean isError, String response) {
+        fMetrics.onEvent(phase, type);
+
+        EventDispatcher events = entry.events;
+        if (events.accepts(phase, type)) {
+            events.dispatch(events.obtain().set(phase, type, isError, response));
+        }
+    }
+
+    void dispatch(Entry entry, AdPhase phase, AdType type) {
+        dispatch(entry, phase, type, false, null);
+    }
+
+    // A show of one runtime rejected before it reached the SDK (options.pacing)
+    void dispatchShowFailure(Entry entry, AdType type, String response) {
+        fMetrics.onEvent(AdPhase.FAILED, type);
+
+        EventDispatcher events = entry.events;
+        if (events.accepts(AdPhase.FAILED, type)) {
+            events.dispatchShowFailure(type, response);
+        }
+    }
+
+    @Override
+    public void dispatchAvailability(AdPhase phase, AdType type, boolean isError, String response) {
+        fMetrics.onEvent(phase, type);
+
+        for (Entry entry : fEntries) {
+            EventDispatcher events = entry.events;
+            if (events.accepts(phase, type)) {
+                events.dispatchAvailability(phase, type, isError, response);
+            }
+        }
+    }
+}
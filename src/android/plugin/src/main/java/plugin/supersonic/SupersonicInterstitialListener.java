@@ -0,0 +1,106 @@
+//
+//  SupersonicInterstitialListener.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.ironsource.mediationsdk.logger.IronSourceError;
+import com.ironsource.mediationsdk.sdk.InterstitialListener;
+
+// Supersonic interstitial listener class
+final class SupersonicInterstitialListener implements InterstitialListener {
+    private final EventSink fEvents;
+    private final AdUnitHandler fHandler;
+    private final AdTelemetry fTelemetry;
+    private final AdMetrics fMetrics;
+    private final PacingEngine fPacing;
+    private final InterstitialPreloader fPreloader;
+
+    SupersonicInterstitialListener(EventSink events, AdUnitRegistry adUnits, AdTelemetry telemetry, AdMetrics metrics, PacingEngine pacing, InterstitialPreloader preloader) {
+        fEvents = events;
+        fHandler = adUnits.get(AdType.INTERSTITIAL);
+        fTelemetry = telemetry;
+        fMetrics = metrics;
+        fPacing = pacing;
+        fPreloader = preloader;
+    }
+
+    @Override
+    public void onInterstitialAdReady() {
+        TraceBuffer.record(TracePoint.INTERSTITIAL_READY, AdType.INTERSTITIAL);
+
+        // interstitial ready/failed answer an explicit load, so they are always sent
+        fHandler.availability.reset(AvailabilityState.READY);
+        fHandler.onLoadFinished();
+        fTelemetry.increment(AdType.INTERSTITIAL, AdTelemetry.FILLS);
+        fPreloader.onReady();
+        fEvents.dispatch(AdPhase.LOADED, AdType.INTERSTITIAL);
+    }
+
+    @Override
+    public void onInterstitialAdLoadFailed(IronSourceError supersonicError) {
+        TraceBuffer.record(TracePoint.INTERSTITIAL_LOAD_FAILED, AdType.INTERSTITIAL, supersonicError.getErrorCode());
+
+        fHandler.availability.reset(AvailabilityState.NOT_READY);
+        fHandler.onLoadFinished();
+        fTelemetry.onError(AdType.INTERSTITIAL, AdTelemetry.LOAD_FAILURES, supersonicError.getErrorCode());
+        fPreloader.onLoadFailed(supersonicError.getErrorCode());
+        fEvents.dispatch(AdPhase.FAILED, AdType.INTERSTITIAL, true, supersonicError.getErrorMessage());
+    }
+
+    @Override
+    public void onInterstitialAdOpened() {
+        TraceBuffer.record(TracePoint.INTERSTITIAL_OPENED, AdType.INTERSTITIAL);
+
+        fTelemetry.onOpened(AdType.INTERSTITIAL);
+        fMetrics.onOpened(AdType.INTERSTITIAL);
+        // the impression counts towards options.pacing once the ad is on screen
+        fPacing.onOpened(AdType.INTERSTITIAL);
+
+        // This event arrives *after* the Corona activity has been suspended
+        // the 'displayed' event is therefore sent in show()
+    }
+
+    @Override
+    public void onInterstitialAdClosed() {
+        TraceBuffer.record(TracePoint.INTERSTITIAL_CLOSED, AdType.INTERSTITIAL);
+
+        // an interstitial is consumed by showing it
+        fHandler.availability.reset(AvailabilityState.NOT_READY);
+        fHandler.placements.invalidate();
+        fTelemetry.onClosed(AdType.INTERSTITIAL);
+        fPreloader.onClosed();
+        fEvents.dispatch(AdPhase.CLOSED, AdType.INTERSTITIAL);
+    }
+
+    @Override
+    public void onInterstitialAdShowSucceeded() {
+        TraceBuffer.record(TracePoint.INTERSTITIAL_SHOW_SUCCEEDED, AdType.INTERSTITIAL);
+
+        // NOP
+    }
+
+    @Override
+    public void onInterstitialAdShowFailed(IronSourceError supersonicError) {
+        TraceBuffer.record(TracePoint.INTERSTITIAL_SHOW_FAILED, AdType.INTERSTITIAL, supersonicError.getErrorCode());
+
+        fTelemetry.onError(AdType.INTERSTITIAL, AdTelemetry.SHOW_FAILURES, supersonicError.getErrorCode());
+        fPacing.onShowFailed(AdType.INTERSTITIAL);
+
+        // the ad can't be shown, get a fresh one
+        fPreloader.onClosed();
+        fEvents.dispatchShowFailure(AdType.INTERSTITIAL, supersonicError.getErrorMessage());
+    }
+
+    @Override
+    public void onInterstitialAdClicked() {
+        TraceBuffer.record(TracePoint.INTERSTITIAL_CLICKED, AdType.INTERSTITIAL);
+
+        fEvents.dispatch(AdPhase.CLICKED, AdType.INTERSTITIAL);
+    }
+}
@@ -0,0 +1,99 @@
+//
+//  SupersonicOfferWallListener.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.ironsource.mediationsdk.logger.IronSourceError;
+import com.ironsource.mediationsdk.sdk.OfferwallListener;
+
+// Supersonic offer wall listener class
+final class SupersonicOfferWallListener implements OfferwallListener {
+    private final EventSink fEvents;
+    private final AdUnitHandler fHandler;
+    private final AdTelemetry fTelemetry;
+    private final AdMetrics fMetrics;
+    private final PacingEngine fPacing;
+    private final RewardDispatcher fRewards;
+
+    SupersonicOfferWallListener(EventSink events, AdUnitRegistry adUnits, AdTelemetry telemetry, AdMetrics metrics, PacingEngine pacing, RewardDispatcher rewards) {
+        fEvents = events;
+        fHandler = adUnits.get(AdType.OFFER_WALL);
+        fTelemetry = telemetry;
+        fMetrics = metrics;
+        fPacing = pacing;
+        fRewards = rewards;
+    }
+
+    @Override
+    public void onOfferwallAvailable(boolean offerAvailable) {
+        TraceBuffer.record(TracePoint.OFFERWALL_AVAILABLE, AdType.OFFER_WALL, offerAvailable ? 1 : 0);
+
+        if (offerAvailable) {
+            fTelemetry.increment(AdType.OFFER_WALL, AdTelemetry.FILLS);
+        }
+
+        // only sends an event if the availability has changed
+        fHandler.availability.report(offerAvailable);
+    }
+
+    @Override
+    public void onOfferwallOpened() {
+        TraceBuffer.record(TracePoint.OFFERWALL_OPENED, AdType.OFFER_WALL);
+
+        fTelemetry.onOpened(AdType.OFFER_WALL);
+        fMetrics.onOpened(AdType.OFFER_WALL);
+        // the impression counts towards options.pacing once the ad is on screen
+        fPacing.onOpened(AdType.OFFER_WALL);
+
+        // This event arrives *after* the Corona activity has been suspended
+        // the 'displayed' event is therefore sent in show()
+    }
+
+    @Override
+    public void onOfferwallShowFailed(IronSourceError supersonicError) {
+        TraceBuffer.record(TracePoint.OFFERWALL_SHOW_FAILED, AdType.OFFER_WALL, supersonicError.getErrorCode());
+
+        fTelemetry.onError(AdType.OFFER_WALL, AdTelemetry.SHOW_FAILURES, supersonicError.getErrorCode());
+        fPacing.onShowFailed(AdType.OFFER_WALL);
+        fEvents.dispatchShowFailure(AdType.OFFER_WALL, supersonicError.getErrorMessage());
+    }
+
+    @Override
+    public boolean onOfferwallAdCredited(int credits, int totalCredits, boolean totalCreditsFlag) {
+        TraceBuffer.record(TracePoint.OFFERWALL_CREDITED, AdType.OFFER_WALL, credits);
+
+        fTelemetry.increment(AdType.OFFER_WALL, AdTelemetry.REWARDS);
+
+        // Dispatch the event
+        if (fRewards.accepts(AdType.OFFER_WALL)) {
+            fRewards.dispatch(AdType.OFFER_WALL, RewardPayload.credits(credits, totalCredits, totalCreditsFlag));
+        }
+
+        return true;
+    }
+
+    @Override
+    public void onGetOfferwallCreditsFailed(IronSourceError supersonicError) {
+        TraceBuffer.record(TracePoint.OFFERWALL_CREDITS_FAILED, AdType.OFFER_WALL, supersonicError.getErrorCode());
+
+        // the credits are loaded from the offer wall's server
+        fTelemetry.onError(AdType.OFFER_WALL, AdTelemetry.LOAD_FAILURES, supersonicError.getErrorCode());
+        fEvents.dispatch(AdPhase.FAILED, AdType.OFFER_WALL, true, supersonicError.getErrorMessage());
+    }
+
+    @Override
+    public void onOfferwallClosed() {
+        TraceBuffer.record(TracePoint.OFFERWALL_CLOSED, AdType.OFFER_WALL);
+
+        // the next availability report is news to Lua, whatever its value
+        fHandler.availability.reset(AvailabilityState.UNKNOWN);
+        fTelemetry.onClosed(AdType.OFFER_WALL);
+        fEvents.dispatch(AdPhase.CLOSED, AdType.OFFER_WALL);
+    }
+}
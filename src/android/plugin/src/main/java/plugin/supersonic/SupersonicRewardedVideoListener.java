@@ -0,0 +1,113 @@
+//
+//  SupersonicRewardedVideoListener.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import com.ironsource.mediationsdk.logger.IronSourceError;
+import com.ironsource.mediationsdk.model.Placement;
+import com.ironsource.mediationsdk.sdk.RewardedVideoListener;
+
+// Supersonic rewarded video listener class
+final class SupersonicRewardedVideoListener implements RewardedVideoListener {
+    private final EventSink fEvents;
+    private final AdUnitHandler fHandler;
+    private final AdTelemetry fTelemetry;
+    private final AdMetrics fMetrics;
+    private final PacingEngine fPacing;
+    private final RewardDispatcher fRewards;
+
+    SupersonicRewardedVideoListener(EventSink events, AdUnitRegistry adUnits, AdTelemetry telemetry, AdMetrics metrics, PacingEngine pacing, RewardDispatcher rewards) {
+        fEvents = events;
+        fHandler = adUnits.get(AdType.REWARDED_VIDEO);
+        fTelemetry = telemetry;
+        fMetrics = metrics;
+        fPacing = pacing;
+        fRewards = rewards;
+    }
+
+    @Override
+    public void onRewardedVideoAdClicked(Placement placement) {
+        TraceBuffer.record(TracePoint.REWARDED_VIDEO_CLICKED, AdType.REWARDED_VIDEO);
+    }
+
+    @Override
+    public void onRewardedVideoAdOpened() {
+        TraceBuffer.record(TracePoint.REWARDED_VIDEO_OPENED, AdType.REWARDED_VIDEO);
+
+        fTelemetry.onOpened(AdType.REWARDED_VIDEO);
+        fMetrics.onOpened(AdType.REWARDED_VIDEO);
+        // the impression counts towards options.pacing once the ad is on screen
+        fPacing.onOpened(AdType.REWARDED_VIDEO);
+
+        // This event arrives *after* the Corona activity has been suspended
+        // the 'displayed' event is therefore sent in show()
+    }
+
+    @Override
+    public void onRewardedVideoAdClosed() {
+        TraceBuffer.record(TracePoint.REWARDED_VIDEO_CLOSED, AdType.REWARDED_VIDEO);
+
+        // the next availability report is news to Lua, whatever its value
+        fHandler.availability.reset(AvailabilityState.UNKNOWN);
+        fHandler.placements.invalidate();
+        fTelemetry.onClosed(AdType.REWARDED_VIDEO);
+        fEvents.dispatch(AdPhase.CLOSED, AdType.REWARDED_VIDEO);
+    }
+
+    @Override
+    public void onRewardedVideoAvailabilityChanged(boolean hasAvailableAds) {
+        TraceBuffer.record(TracePoint.REWARDED_VIDEO_AVAILABILITY_CHANGED, AdType.REWARDED_VIDEO, hasAvailableAds ? 1 : 0);
+
+        if (hasAvailableAds) {
+            fTelemetry.increment(AdType.REWARDED_VIDEO, AdTelemetry.FILLS);
+        }
+
+        // only sends an event if the availability has changed
+        fHandler.availability.report(hasAvailableAds);
+    }
+
+    @Override
+    public void onRewardedVideoAdStarted() {
+        TraceBuffer.record(TracePoint.REWARDED_VIDEO_STARTED, AdType.REWARDED_VIDEO);
+
+        fEvents.dispatch(AdPhase.PLAYBACK_BEGAN, AdType.REWARDED_VIDEO);
+    }
+
+    @Override
+    public void onRewardedVideoAdEnded() {
+        TraceBuffer.record(TracePoint.REWARDED_VIDEO_ENDED, AdType.REWARDED_VIDEO);
+
+        fEvents.dispatch(AdPhase.PLAYBACK_ENDED, AdType.REWARDED_VIDEO);
+    }
+
+    @Override
+    public void onRewardedVideoAdRewarded(Placement placement) {
+        TraceBuffer.record(TracePoint.REWARDED_VIDEO_REWARDED, AdType.REWARDED_VIDEO, placement != null ? placement.getRewardAmount() : 0);
+
+        // the impression counts towards the placement's capping
+        fHandler.placements.invalidate();
+        fTelemetry.increment(AdType.REWARDED_VIDEO, AdTelemetry.REWARDS);
+
+        // Dispatch the event
+        if (fRewards.accepts(AdType.REWARDED_VIDEO)) {
+            fRewards.dispatch(AdType.REWARDED_VIDEO, RewardPayload.placement(placement));
+        }
+    }
+
+    @Override
+    public void onRewardedVideoAdShowFailed(IronSourceError supersonicError) {
+        TraceBuffer.record(TracePoint.REWARDED_VIDEO_SHOW_FAILED, AdType.REWARDED_VIDEO, supersonicError.getErrorCode());
+
+        fTelemetry.onError(AdType.REWARDED_VIDEO, AdTelemetry.SHOW_FAILURES, supersonicError.getErrorCode());
+        fPacing.onShowFailed(AdType.REWARDED_VIDEO);
+
+        // ends a pending show() request
+        fEvents.dispatchShowFailure(AdType.REWARDED_VIDEO, supersonicError.getErrorMessage());
+    }
+}
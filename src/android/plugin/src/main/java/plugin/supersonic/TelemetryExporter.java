@@ -0,0 +1,133 @@
+//
+//  TelemetryExporter.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.util.Log;
+
+/**
+ * Writes {@link AdTelemetry} snapshots to numbered files in a directory of the app's cache dir (options.telemetry).
+ * <p>
+ * Every export covers the session since the previous one and goes to the next file, 1.bin, 2.bin, ...; only the
+ * newest {@link #MAX_FILES} are kept. Files are written to a temporary name and renamed, so a reader never sees a
+ * partial snapshot and may delete files once collected. Each file is
+ * <pre>
+ *   int magic "SSTM", short version, then the snapshot laid out by {@link AdTelemetry#snapshot(ByteBuffer)}
+ * </pre>
+ */
+final class TelemetryExporter {
+    private static final String CORONA_LOG_TAG = "Corona";
+
+    static final int MAX_FILES = 16;
+
+    private static final int MAGIC = 0x5353544d;   // "SSTM"
+    private static final short VERSION = 1;
+    private static final String SUFFIX = ".bin";
+
+    private final AdTelemetry fTelemetry;
+
+    // set once by supersonic.init(), exports are skipped until then
+    private volatile File fDirectory;
+    private ExecutorService fWriter;
+
+    // writer thread only
+    private final ByteBuffer fBuffer = ByteBuffer.allocate(6 + AdTelemetry.SNAPSHOT_SIZE);
+    private long fSequence = -1;
+
+    TelemetryExporter(AdTelemetry telemetry) {
+        fTelemetry = telemetry;
+    }
+
+    synchronized void open(File directory) {
+        if (fWriter == null) {
+            fWriter = Executors.newSingleThreadExecutor(new NamedThreadFactory("supersonic-telemetry", Thread.MIN_PRIORITY));
+        }
+        fDirectory = directory;
+    }
+
+    // Queues a snapshot of the counters, safe from any thread
+    void export() {
+        final File directory = fDirectory;
+        if (directory == null) {
+            return;
+        }
+
+        fWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(directory);
+                } catch (IOException ex) {
+                    Log.i(CORONA_LOG_TAG, "ERROR: supersonic telemetry export failed: " + ex.getMessage());
+                }
+            }
+        });
+    }
+
+    private void write(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't create " + directory);
+        }
+
+        // the counters are reset by the snapshot, so it's taken even if the file can't be written
+        fBuffer.clear();
+        fBuffer.putInt(MAGIC);
+        fBuffer.putShort(VERSION);
+        fTelemetry.snapshot(fBuffer);
+
+        String[] names = directory.list();
+        if (fSequence < 0) {
+            fSequence = 0;
+            for (String name : names != null ? names : new String[0]) {
+                fSequence = Math.max(fSequence, sequenceOf(name));
+            }
+        }
+        fSequence++;
+
+        File tmp = new File(directory, fSequence + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(fBuffer.array(), 0, fBuffer.position());
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(directory, fSequence + SUFFIX))) {
+            throw new IOException("can't rename " + tmp);
+        }
+
+        // rotate: drop the files older than the newest MAX_FILES
+        if (names != null) {
+            for (String name : names) {
+                long sequence = sequenceOf(name);
+                if (sequence > 0 && sequence <= fSequence - MAX_FILES) {
+                    new File(directory, name).delete();
+                }
+            }
+        }
+    }
+
+    // Sequence number of a snapshot file name, 0 for anything else
+    private static long sequenceOf(String name) {
+        if (!name.endsWith(SUFFIX)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+//
+//  TraceBuffer.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide ring buffer of the last {@link #CAPACITY} SDK callbacks and Lua API calls, written out by
+ * supersonic.dumpTrace(path).
+ * <p>
+ * {@link #record(TracePoint, AdType, int)} claims a slot with one atomic increment and fills it with ordered
+ * stores into a preallocated array, no locks and no allocation, so it stays enabled in production. Each slot is
+ * guarded by its sequence number (0 while being written), so a dump taken while callbacks are running skips
+ * torn records.
+ * <p>
+ * Dump file, big endian:
+ * <pre>
+ *   int magic "SSTR", short version, long dump nanoTime, long dump wall clock milliseconds
+ *   short point count, then per point: short UTF-8 length, name    (TracePoint names, indexed by point)
+ *   int record count, then per record, oldest first:
+ *     long nanoTime, short point, byte ad type (-1 = none), int thread id, int code
+ * </pre>
+ */
+final class TraceBuffer {
+    static final int CAPACITY = 2048;   // power of two
+
+    private static final int MAGIC = 0x53535452;   // "SSTR"
+    private static final short VERSION = 1;
+    private static final int RECORD_SIZE = 8 + 2 + 1 + 4 + 4;
+
+    // slot layout: sequence + 1 (0 = empty or being written), nanoTime, point << 40 | type << 32 | thread id, code
+    private static final int FIELDS = 4;
+
+    private static final AtomicLong sNext = new AtomicLong();
+    private static final AtomicLongArray sSlots = new AtomicLongArray(CAPACITY * FIELDS);
+
+    private TraceBuffer() {
+    }
+
+    // Safe from any thread
+    static void record(TracePoint point, AdType type, int code) {
+        long sequence = sNext.getAndIncrement();
+        int base = (int) (sequence & (CAPACITY - 1)) * FIELDS;
+
+        sSlots.set(base, 0);
+        sSlots.lazySet(base + 1, System.nanoTime());
+        sSlots.lazySet(base + 2, ((long) point.ordinal() << 40)
+                | ((long) (type != null ? type.ordinal() : 0xff) << 32)
+                | (Thread.currentThread().getId() & 0xffffffffL));
+        sSlots.lazySet(base + 3, code);
+        sSlots.lazySet(base, sequence + 1);
+    }
+
+    static void record(TracePoint point, AdType type) {
+        record(point, type, 0);
+    }
+
+    /**
+     * Writes the buffered records to a file, see the class comment for the format.
+     *
+     * @return Returns the number of records written.
+     */
+    static int dump(File file) throws IOException {
+        Charset utf8 = Charset.forName("UTF-8");
+
+        int namesSize = 2;
+        byte[][] names = new byte[TracePoint.VALUES.length][];
+        for (TracePoint point : TracePoint.VALUES) {
+            names[point.ordinal()] = point.name().getBytes(utf8);
+            namesSize += 2 + names[point.ordinal()].length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(4 + 2 + 8 + 8 + namesSize + 4 + CAPACITY * RECORD_SIZE);
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putLong(System.nanoTime());
+        out.putLong(System.currentTimeMillis());
+
+        out.putShort((short) names.length);
+        for (byte[] name : names) {
+            out.putShort((short) name.length);
+            out.put(name);
+        }
+
+        int countPosition = out.position();
+        out.putInt(0);
+
+        long end = sNext.get();
+        int count = 0;
+        for (long sequence = Math.max(0, end - CAPACITY); sequence < end; sequence++) {
+            int base = (int) (sequence & (CAPACITY - 1)) * FIELDS;
+
+            long before = sSlots.get(base);
+            long time = sSlots.get(base + 1);
+            long packed = sSlots.get(base + 2);
+            int code = (int) sSlots.get(base + 3);
+
+            // overwritten by a newer record, or still being written
+            if (before != sequence + 1 || sSlots.get(base) != before) {
+                continue;
+            }
+
+            out.putLong(time);
+            out.putShort((short) (packed >>> 40));
+            out.put((byte) (packed >>> 32));
+            out.putInt((int) packed);
+            out.putInt(code);
+            count++;
+        }
+        out.putInt(countPosition, count);
+
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(out.array(), 0, out.position());
+        } finally {
+            stream.close();
+        }
+
+        return count;
+    }
+}
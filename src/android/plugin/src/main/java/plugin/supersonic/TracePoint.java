@@ -0,0 +1,60 @@
+//
+//  TracePoint.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+/**
+ * The SDK callbacks and Lua API calls recorded in the {@link TraceBuffer}.
+ * <p>
+ * Names are written into every trace dump, so constants may be added or reordered freely.
+ */
+enum TracePoint {
+    // Lua API
+    LUA_INIT,
+    LUA_LOAD,
+    LUA_SHOW,
+    LUA_SHOW_PACED,         // code: PacingEngine result of a show rejected by options.pacing
+    LUA_IS_LOADED,
+    LUA_GET_PLACEMENT_INFO,
+    LUA_IS_PLACEMENT_CAPPED,
+    LUA_GET_STATUS,
+    LUA_GET_METRICS,
+    LUA_DUMP_TRACE,
+    LUA_SET_EVENT_FILTER,
+
+    // OfferwallListener
+    OFFERWALL_AVAILABLE,    // code: 1 if available
+    OFFERWALL_OPENED,
+    OFFERWALL_SHOW_FAILED,
+    OFFERWALL_CREDITED,     // code: credits
+    OFFERWALL_CREDITS_FAILED,
+    OFFERWALL_CLOSED,
+
+    // InterstitialListener
+    INTERSTITIAL_READY,
+    INTERSTITIAL_LOAD_FAILED,
+    INTERSTITIAL_OPENED,
+    INTERSTITIAL_CLOSED,
+    INTERSTITIAL_SHOW_SUCCEEDED,
+    INTERSTITIAL_SHOW_FAILED,
+    INTERSTITIAL_CLICKED,
+
+    // RewardedVideoListener
+    REWARDED_VIDEO_CLICKED,
+    REWARDED_VIDEO_OPENED,
+    REWARDED_VIDEO_CLOSED,
+    REWARDED_VIDEO_AVAILABILITY_CHANGED,    // code: 1 if available
+    REWARDED_VIDEO_STARTED,
+    REWARDED_VIDEO_ENDED,
+    REWARDED_VIDEO_REWARDED,                // code: reward amount
+    REWARDED_VIDEO_SHOW_FAILED;
+
+    // cached copy of values(), which allocates a new array on every call
+    static final TracePoint[] VALUES = values();
+}
@@ -0,0 +1,214 @@
+//
+//  UiCommandQueue.java
+//  Supersonic plugin
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.naef.jnlua.LuaState;
+
+/**
+ * Serial queue for all of the plugin's SDK work on the UI thread.
+ * <p>
+ * Commands run one per UI thread message, so frames and input are never held up by a backlog. Everything a
+ * runtime asks for (init, load, show, onPause/onResume) runs in the order it was queued, as a show depends on
+ * the SDK init and the dynamic user id set by the calls before it. Only background work that depends on nothing
+ * queued after it, such as interstitial preloading, waits until the queue is otherwise empty. SDK init takes its
+ * place in the queue when supersonic.init() is called, with {@link #reserve(int)}, and holds back the commands
+ * behind it until its background stages have filled it in. A pause queued while a resume is still pending, or the other
+ * way round, cancels both: showing an ad suspends the Corona runtime, and quick suspend/resume cycles would
+ * otherwise stack up redundant IronSource.onPause/onResume pairs. The time commands spend waiting is recorded per
+ * priority for supersonic.getMetrics().
+ */
+final class UiCommandQueue {
+    static final int NORMAL = 0;        // SDK init, load, show, onPause/onResume, in call order
+    static final int BACKGROUND = 1;    // preloading
+
+    private static final String[] PRIORITY_NAMES = { "normal", "background" };
+
+    // lifecycle commands that cancel each other out
+    private static final int PAUSE = 1;
+    private static final int RESUME = 2;
+
+    static final class Command {
+        private Runnable runnable;  // null while reserved, guarded by the queue
+        private final int priority;
+        private final int lifecycle;        // PAUSE, RESUME or 0
+        private long enqueuedNanos = System.nanoTime();
+
+        private Command(Runnable runnable, int priority, int lifecycle) {
+            this.runnable = runnable;
+            this.priority = priority;
+            this.lifecycle = lifecycle;
+        }
+    }
+
+    private final Handler fUiHandler = new Handler(Looper.getMainLooper());
+
+    // guarded by this
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Command>[] fQueues = new ArrayDeque[] { new ArrayDeque<Command>(), new ArrayDeque<Command>() };
+    private Command fPendingLifecycle;
+    private boolean fScheduled;
+
+    private final LatencyHistogram[] fWait = { new LatencyHistogram(), new LatencyHistogram() };
+    private final AtomicLong fExecuted = new AtomicLong();
+    private final AtomicLong fCoalesced = new AtomicLong();
+
+    private final Runnable fRunNext = new Runnable() {
+        @Override
+        public void run() {
+            runNext();
+        }
+    };
+
+    // Queues SDK work for the UI thread, safe from any thread
+    void post(int priority, Runnable runnable) {
+        enqueue(new Command(runnable, priority, 0));
+    }
+
+    /**
+     * Takes a place in the queue for a command that isn't known yet, safe from any thread. The commands of the
+     * same priority queued after it wait until {@link #fill(Command, Runnable)} has supplied it.
+     */
+    Command reserve(int priority) {
+        Command command = new Command(null, priority, 0);
+        synchronized (this) {
+            fQueues[priority].add(command);
+        }
+        return command;
+    }
+
+    // Supplies a reserved command, which runs as soon as the commands ahead of it have
+    void fill(Command command, Runnable runnable) {
+        synchronized (this) {
+            command.runnable = runnable;
+            // the wait starts now, not while the command was being prepared
+            command.enqueuedNanos = System.nanoTime();
+            if (!schedule()) {
+                return;
+            }
+        }
+        fUiHandler.post(fRunNext);
+    }
+
+    void postPause(Runnable runnable) {
+        enqueueLifecycle(PAUSE, runnable);
+    }
+
+    void postResume(Runnable runnable) {
+        enqueueLifecycle(RESUME, runnable);
+    }
+
+    private void enqueueLifecycle(int lifecycle, Runnable runnable) {
+        Command command = new Command(runnable, NORMAL, lifecycle);
+
+        synchronized (this) {
+            // the SDK hasn't seen the opposite call yet, drop both
+            if (fPendingLifecycle != null && fPendingLifecycle.lifecycle != lifecycle) {
+                fQueues[NORMAL].remove(fPendingLifecycle);
+                fPendingLifecycle = null;
+                fCoalesced.addAndGet(2);
+                return;
+            }
+            fPendingLifecycle = command;
+
+            if (!add(command)) {
+                return;
+            }
+        }
+        fUiHandler.post(fRunNext);
+    }
+
+    private void enqueue(Command command) {
+        synchronized (this) {
+            if (!add(command)) {
+                return;
+            }
+        }
+        fUiHandler.post(fRunNext);
+    }
+
+    // Returns true if the caller has to schedule runNext(), call with the lock held
+    private boolean add(Command command) {
+        fQueues[command.priority].add(command);
+        return schedule();
+    }
+
+    private boolean schedule() {
+        if (fScheduled) {
+            return false;
+        }
+        fScheduled = true;
+        return true;
+    }
+
+    // UI thread: runs the first command of the highest priority, then yields to the looper
+    // A reserved command that hasn't been filled yet holds back its queue, fill() schedules the next run
+    private void runNext() {
+        Command command = null;
+        boolean more = false;
+
+        synchronized (this) {
+            for (ArrayDeque<Command> queue : fQueues) {
+                if (command == null && isReady(queue)) {
+                    command = queue.poll();
+                }
+                if (isReady(queue)) {
+                    more = true;
+                }
+            }
+            if (command != null && command == fPendingLifecycle) {
+                fPendingLifecycle = null;
+            }
+            fScheduled = more;
+        }
+
+        if (more) {
+            fUiHandler.post(fRunNext);
+        }
+
+        if (command != null) {
+            fWait[command.priority].record(System.nanoTime() - command.enqueuedNanos);
+            fExecuted.incrementAndGet();
+            command.runnable.run();
+        }
+    }
+
+    private static boolean isReady(ArrayDeque<Command> queue) {
+        Command head = queue.peek();
+        return head != null && head.runnable != null;
+    }
+
+    synchronized int depth() {
+        return fQueues[NORMAL].size() + fQueues[BACKGROUND].size();
+    }
+
+    // Pushes { depth, executed, coalesced, wait = { normal = {...}, background = {...} } }
+    void push(LuaState L) {
+        L.newTable(0, 4);
+        L.pushNumber(depth());
+        L.setField(-2, "depth");
+        L.pushNumber(fExecuted.get());
+        L.setField(-2, "executed");
+        L.pushNumber(fCoalesced.get());
+        L.setField(-2, "coalesced");
+
+        L.newTable(0, PRIORITY_NAMES.length);
+        for (int i = 0; i < PRIORITY_NAMES.length; i++) {
+            fWait[i].push(L);
+            L.setField(-2, PRIORITY_NAMES[i]);
+        }
+        L.setField(-2, "wait");
+    }
+}
@@ -0,0 +1,97 @@
+//
+//  AdEventPoolTest.java
+//  Supersonic plugin tests
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class AdEventPoolTest {
+    @Test
+    public void handsOutRecycledEvents() {
+        AdEventPool pool = new AdEventPool(2);
+        AdEvent first = pool.obtain();
+        AdEvent second = pool.obtain();
+        assertNotSame(first, second);
+
+        first.set(AdPhase.REWARDED, AdType.REWARDED_VIDEO, true, "response");
+        first.ledgerId = 7;
+        pool.recycle(first);
+
+        AdEvent reused = pool.obtain();
+        assertSame(first, reused);
+        assertNull(reused.phase);
+        assertNull(reused.type);
+        assertNull(reused.response);
+        assertFalse(reused.isError);
+        assertEquals(0, reused.ledgerId);
+    }
+
+    @Test
+    public void createsEventsWhenEmptyAndDropsThemWhenFull() {
+        AdEventPool pool = new AdEventPool(1);
+        AdEvent pooled = pool.obtain();
+        AdEvent extra = pool.obtain();
+        assertNotNull(extra);
+        assertNotSame(pooled, extra);
+
+        // only one slot, the second recycled event is left to the collector
+        pool.recycle(pooled);
+        pool.recycle(extra);
+        assertSame(pooled, pool.obtain());
+        assertNotSame(extra, pool.obtain());
+    }
+
+    @Test
+    public void neverHandsOutAnEventTwice() throws InterruptedException {
+        final AdEventPool pool = new AdEventPool(8);
+        final int threads = 4;
+        final int rounds = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final boolean[] failed = new boolean[1];
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = 0; i < rounds; i++) {
+                        AdEvent event = pool.obtain();
+                        // an event owned by another thread would already be marked
+                        if (event.ledgerId != 0) {
+                            failed[0] = true;
+                        }
+                        event.ledgerId = 1;
+                        pool.recycle(event);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertFalse(failed[0]);
+    }
+}
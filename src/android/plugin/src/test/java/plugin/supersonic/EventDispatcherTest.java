@@ -0,0 +1,190 @@
+//
+//  EventDispatcherTest.java
+//  Supersonic plugin tests
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.naef.jnlua.LuaState;
+
+public class EventDispatcherTest {
+    // A runtime that can be suspended, records the events pushed into Lua
+    private static class RecordingTarget implements EventDispatcher.Target {
+        final List<String> delivered = new ArrayList<>();
+        boolean attached;
+        int drainsScheduled;
+
+        @Override
+        public boolean isAttached() {
+            return attached;
+        }
+
+        @Override
+        public void scheduleDrain() {
+            drainsScheduled++;
+        }
+
+        @Override
+        public void deliver(LuaState L, AdEvent event) {
+            delivered.add(event.phase.luaName + (event.response != null ? ":" + event.response : ""));
+        }
+    }
+
+    private RecordingTarget fTarget;
+    private EventDispatcher fEvents;
+
+    @Before
+    public void setUp() {
+        fTarget = new RecordingTarget();
+        fEvents = new EventDispatcher(fTarget, null, 4);
+        fEvents.setEventsPerFrame(100);
+    }
+
+    // Attaches the target and runs the drain flush() schedules
+    private void attachAndDrain() {
+        fTarget.attached = true;
+        fEvents.flush();
+        fEvents.drain(null);
+    }
+
+    private void assertDelivered(String... events) {
+        assertEquals(Arrays.asList(events), fTarget.delivered);
+        fTarget.delivered.clear();
+    }
+
+    @Test
+    public void holdsEventsUntilTheTargetAttaches() {
+        fEvents.dispatch(AdPhase.INIT, null);
+        fEvents.dispatch(AdPhase.LOADED, AdType.INTERSTITIAL);
+        fEvents.dispatch(AdPhase.DISPLAYED, AdType.INTERSTITIAL);
+
+        assertEquals(0, fTarget.drainsScheduled);
+        assertEquals(3, fEvents.depth());
+
+        attachAndDrain();
+
+        assertEquals(1, fTarget.drainsScheduled);
+        assertDelivered("init", "loaded", "displayed");
+        assertEquals(0, fEvents.depth());
+    }
+
+    @Test
+    public void keepsEventsForADrainScheduledBeforeSuspending() {
+        fTarget.attached = true;
+        fEvents.dispatch(AdPhase.CLOSED, AdType.INTERSTITIAL);
+        assertEquals(1, fTarget.drainsScheduled);
+
+        // the runtime was suspended before the drain ran
+        fTarget.attached = false;
+        fEvents.drain(null);
+        fEvents.dispatch(AdPhase.LOADED, AdType.INTERSTITIAL);
+        assertDelivered();
+
+        attachAndDrain();
+        assertDelivered("closed", "loaded");
+    }
+
+    @Test
+    public void coalescesAvailabilityInPlace() {
+        fEvents.dispatchAvailability(AdPhase.LOADED, AdType.REWARDED_VIDEO, false, null);
+        fEvents.dispatch(AdPhase.CLOSED, AdType.INTERSTITIAL);
+        fEvents.dispatchAvailability(AdPhase.FAILED, AdType.REWARDED_VIDEO, true, "noFill");
+        fEvents.dispatchAvailability(AdPhase.LOADED, AdType.OFFER_WALL, false, null);
+        fEvents.dispatchAvailability(AdPhase.LOADED, AdType.REWARDED_VIDEO, false, "again");
+
+        // one queue slot per ad type, however often the availability flips
+        assertEquals(3, fEvents.depth());
+        assertEquals(2, fEvents.coalescedEvents());
+
+        attachAndDrain();
+        assertDelivered("loaded:again", "closed", "loaded");
+
+        // delivered, the next change takes a new slot
+        fEvents.dispatchAvailability(AdPhase.FAILED, AdType.REWARDED_VIDEO, true, "noFill");
+        fEvents.drain(null);
+        assertDelivered("failed:noFill");
+    }
+
+    @Test
+    public void dropsEventsBeyondTheBound() {
+        for (int i = 0; i < 6; i++) {
+            fEvents.dispatch(AdPhase.CLICKED, AdType.INTERSTITIAL);
+        }
+
+        assertEquals(4, fEvents.depth());
+        assertEquals(2, fEvents.droppedEvents());
+
+        attachAndDrain();
+        assertDelivered("clicked", "clicked", "clicked", "clicked");
+    }
+
+    @Test
+    public void keepsRewardsAvailabilityAndRequestedFinalEventsWhenFull() {
+        fEvents.setRequestedEvents(EventDispatcher.bit(AdPhase.LOADED, AdType.INTERSTITIAL));
+        for (int i = 0; i < 4; i++) {
+            fEvents.dispatch(AdPhase.CLICKED, AdType.INTERSTITIAL);
+        }
+
+        fEvents.dispatch(AdPhase.REWARDED, AdType.REWARDED_VIDEO);
+        fEvents.dispatch(AdPhase.CLICKED, AdType.INTERSTITIAL);
+        fEvents.dispatch(AdPhase.CLOSED, AdType.INTERSTITIAL);
+        fEvents.dispatch(AdPhase.LOADED, AdType.INTERSTITIAL);
+        fEvents.dispatchAvailability(AdPhase.FAILED, AdType.OFFER_WALL, true, "noFill");
+        fEvents.dispatchAvailability(AdPhase.LOADED, AdType.OFFER_WALL, false, null);
+
+        // no request waits for 'closed', it goes with 'clicked'
+        assertEquals(2, fEvents.droppedEvents());
+        assertEquals(7, fEvents.depth());
+
+        attachAndDrain();
+        assertDelivered("clicked", "clicked", "clicked", "clicked", "rewarded", "loaded", "loaded");
+        assertEquals(0, fEvents.depth());
+    }
+
+    @Test
+    public void acceptsDroppableEventsAgainOnceTheOverflowIsDelivered() {
+        for (int i = 0; i < 4; i++) {
+            fEvents.dispatch(AdPhase.CLICKED, AdType.INTERSTITIAL);
+        }
+        fEvents.dispatch(AdPhase.REWARDED, AdType.REWARDED_VIDEO);
+
+        attachAndDrain();
+        fTarget.delivered.clear();
+
+        fEvents.dispatch(AdPhase.CLOSED, AdType.INTERSTITIAL);
+        fEvents.drain(null);
+        assertDelivered("closed");
+        assertEquals(0, fEvents.droppedEvents());
+    }
+
+    @Test
+    public void deliversAtMostEventsPerFramePerDrain() {
+        fEvents.setEventsPerFrame(2);
+        fEvents.dispatch(AdPhase.LOADED, AdType.INTERSTITIAL);
+        fEvents.dispatch(AdPhase.DISPLAYED, AdType.INTERSTITIAL);
+        fEvents.dispatch(AdPhase.CLOSED, AdType.INTERSTITIAL);
+
+        attachAndDrain();
+        assertDelivered("loaded", "displayed");
+        // the rest waits for the next frame
+        assertEquals(2, fTarget.drainsScheduled);
+        assertEquals(1, fEvents.depth());
+
+        fEvents.drain(null);
+        assertDelivered("closed");
+        assertEquals(0, fEvents.depth());
+    }
+}
@@ -0,0 +1,158 @@
+//
+//  EventQueueTest.java
+//  Supersonic plugin tests
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class EventQueueTest {
+    private static AdEvent event(AdPhase phase) {
+        return new AdEvent().set(phase, AdType.INTERSTITIAL, false, null);
+    }
+
+    @Test
+    public void roundsCapacityUpToAPowerOfTwo() {
+        assertEquals(8, new EventQueue(5).capacity());
+        assertEquals(8, new EventQueue(8).capacity());
+        assertEquals(1, new EventQueue(1).capacity());
+    }
+
+    @Test
+    public void pollsInOfferOrder() {
+        EventQueue queue = new EventQueue(4);
+        AdEvent first = event(AdPhase.LOADED);
+        AdEvent second = event(AdPhase.CLOSED);
+
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(second));
+        assertEquals(2, queue.size());
+
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void rejectsOffersWhileFull() {
+        EventQueue queue = new EventQueue(4);
+        AdEvent[] events = new AdEvent[4];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = event(AdPhase.CLICKED);
+            assertTrue(queue.offer(events[i]));
+        }
+
+        assertFalse(queue.offer(event(AdPhase.CLICKED)));
+        assertEquals(4, queue.size());
+
+        // one free slot takes exactly one more event
+        assertSame(events[0], queue.poll());
+        AdEvent late = event(AdPhase.CLOSED);
+        assertTrue(queue.offer(late));
+        assertFalse(queue.offer(event(AdPhase.CLICKED)));
+
+        assertSame(events[1], queue.poll());
+        assertSame(events[2], queue.poll());
+        assertSame(events[3], queue.poll());
+        assertSame(late, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void keepsOrderAcrossWraparound() {
+        EventQueue queue = new EventQueue(4);
+        AdEvent[] pending = new AdEvent[3];
+
+        // many laps around the ring with a few events always in flight
+        for (int lap = 0; lap < 100; lap++) {
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = event(AdPhase.VALUES[(lap + i) % AdPhase.VALUES.length]);
+                assertTrue(queue.offer(pending[i]));
+            }
+            for (AdEvent event : pending) {
+                assertSame(event, queue.poll());
+            }
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void deliversEveryEventOfConcurrentProducersOnce() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20000;
+        final EventQueue queue = new EventQueue(64);
+        final AdEvent[][] sent = new AdEvent[producers][perProducer];
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            for (int i = 0; i < perProducer; i++) {
+                sent[p][i] = event(AdPhase.CLICKED);
+            }
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (AdEvent event : sent[producer]) {
+                        // full queue, wait for the consumer
+                        while (!queue.offer(event)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        // index of the next event expected from each producer, their own order must be kept
+        int[] next = new int[producers];
+        HashSet<AdEvent> received = new HashSet<>();
+        start.countDown();
+
+        int total = producers * perProducer;
+        while (received.size() < total) {
+            AdEvent event = queue.poll();
+            if (event == null) {
+                Thread.yield();
+                continue;
+            }
+            assertTrue(received.add(event));
+
+            int producer = 0;
+            while (producer < producers && (next[producer] >= perProducer || sent[producer][next[producer]] != event)) {
+                producer++;
+            }
+            assertTrue("event out of its producer's order", producer < producers);
+            next[producer]++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,225 @@
+//
+//  PacingEngineTest.java
+//  Supersonic plugin tests
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PacingEngineTest {
+    private static final long NOW = 1500000000000L;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public final TemporaryFolder fFolder = new TemporaryFolder();
+
+    private File fFile;
+
+    @Before
+    public void setUp() throws IOException {
+        fFile = new File(fFolder.getRoot(), "pacing.bin");
+    }
+
+    private PacingEngine open(HashMap<String, PacingEngine.Rule> rules) throws IOException {
+        PacingEngine pacing = new PacingEngine();
+        pacing.setRules(rules);
+        pacing.open(fFile);
+        return pacing;
+    }
+
+    private static HashMap<String, PacingEngine.Rule> rules(String placement, PacingEngine.Rule rule) {
+        HashMap<String, PacingEngine.Rule> rules = new HashMap<>();
+        rules.put(placement, rule);
+        return rules;
+    }
+
+    // Placement names after the given one whose first probed slot is the same
+    private static String[] sameHome(String placement, int count) {
+        int home = PacingEngine.home(PacingEngine.hash(placement));
+        String[] names = new String[count];
+        int found = 0;
+        for (int i = 0; found < count; i++) {
+            String name = placement + i;
+            if (PacingEngine.home(PacingEngine.hash(name)) == home) {
+                names[found++] = name;
+            }
+        }
+        return names;
+    }
+
+    @Test
+    public void allowsPlacementsWithoutRuleOrCounters() throws IOException {
+        PacingEngine pacing = new PacingEngine();
+        pacing.setRules(rules("level", new PacingEngine.Rule(1, HOUR, 0)));
+        // not opened yet
+        assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW));
+
+        pacing.open(fFile);
+        assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW));
+        assertEquals(PacingEngine.ALLOWED, pacing.check("other", NOW));
+
+        pacing.countImpression("other", NOW);
+        assertEquals(PacingEngine.ALLOWED, pacing.check("other", NOW));
+    }
+
+    @Test
+    public void pacesWithinTheMinimumInterval() throws IOException {
+        PacingEngine pacing = open(rules("level", new PacingEngine.Rule(0, 0, 1000)));
+
+        pacing.countImpression("level", NOW);
+
+        assertEquals(PacingEngine.PACED, pacing.check("level", NOW));
+        assertEquals(PacingEngine.PACED, pacing.check("level", NOW + 999));
+        assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW + 1000));
+        // a clock that went backwards doesn't hold shows back
+        assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW - 1));
+    }
+
+    @Test
+    public void capsImpressionsPerWindow() throws IOException {
+        PacingEngine pacing = open(rules("level", new PacingEngine.Rule(2, HOUR, 0)));
+
+        pacing.countImpression("level", NOW);
+        assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW + 1));
+        pacing.countImpression("level", NOW + 1);
+        assertEquals(PacingEngine.CAPPED, pacing.check("level", NOW + 2));
+        assertEquals(PacingEngine.CAPPED, pacing.check("level", NOW + HOUR - 1));
+
+        // the window is over, the next impression starts a new one
+        assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW + HOUR));
+        pacing.countImpression("level", NOW + HOUR);
+        assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW + HOUR + 1));
+        pacing.countImpression("level", NOW + HOUR + 1);
+        assertEquals(PacingEngine.CAPPED, pacing.check("level", NOW + HOUR + 2));
+    }
+
+    @Test
+    public void checkingCountsNothing() throws IOException {
+        PacingEngine pacing = open(rules("level", new PacingEngine.Rule(1, HOUR, HOUR)));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW + i));
+            assertFalse(pacing.isCapped("level"));
+        }
+    }
+
+    @Test
+    public void countsTheImpressionOnceTheAdHasOpened() throws IOException {
+        PacingEngine pacing = open(rules("level", new PacingEngine.Rule(1, HOUR, 0)));
+
+        // a failed show uses up nothing
+        assertEquals(PacingEngine.ALLOWED, pacing.tryShow(AdType.INTERSTITIAL, "level"));
+        pacing.onShowFailed(AdType.INTERSTITIAL);
+        pacing.onOpened(AdType.INTERSTITIAL);
+        assertFalse(pacing.isCapped("level"));
+
+        // opened ads of other ad types don't count
+        assertEquals(PacingEngine.ALLOWED, pacing.tryShow(AdType.INTERSTITIAL, "level"));
+        pacing.onOpened(AdType.REWARDED_VIDEO);
+        assertFalse(pacing.isCapped("level"));
+
+        pacing.onOpened(AdType.INTERSTITIAL);
+        assertTrue(pacing.isCapped("level"));
+        assertEquals(PacingEngine.CAPPED, pacing.tryShow(AdType.INTERSTITIAL, "level"));
+
+        // one impression per allowed show
+        pacing.onOpened(AdType.INTERSTITIAL);
+        assertEquals(PacingEngine.CAPPED, pacing.tryShow(AdType.INTERSTITIAL, "level"));
+    }
+
+    @Test
+    public void keepsCollidingPlacementsApart() throws IOException {
+        String[] names = sameHome("level", 3);
+        HashMap<String, PacingEngine.Rule> rules = new HashMap<>();
+        for (String name : names) {
+            rules.put(name, new PacingEngine.Rule(2, HOUR, 0));
+        }
+        PacingEngine pacing = open(rules);
+
+        pacing.countImpression(names[0], NOW);
+        pacing.countImpression(names[0], NOW);
+        pacing.countImpression(names[2], NOW);
+
+        assertEquals(PacingEngine.CAPPED, pacing.check(names[0], NOW));
+        assertEquals(PacingEngine.ALLOWED, pacing.check(names[1], NOW));
+        assertEquals(PacingEngine.ALLOWED, pacing.check(names[2], NOW));
+        pacing.countImpression(names[2], NOW);
+        assertEquals(PacingEngine.CAPPED, pacing.check(names[2], NOW));
+    }
+
+    @Test
+    public void keepsCountersAcrossReopen() throws IOException {
+        HashMap<String, PacingEngine.Rule> rules = rules("level", new PacingEngine.Rule(1, HOUR, 0));
+        open(rules).countImpression("level", NOW);
+
+        assertEquals(PacingEngine.CAPPED, open(rules).check("level", NOW + 1));
+    }
+
+    @Test
+    public void findsCollidingPlacementsAfterAnEarlierOneLostItsRule() throws IOException {
+        String[] names = sameHome("level", 3);
+        HashMap<String, PacingEngine.Rule> rules = new HashMap<>();
+        for (String name : names) {
+            rules.put(name, new PacingEngine.Rule(1, HOUR, 0));
+        }
+
+        // fill the cluster in probe order, the first placement takes the home slot
+        PacingEngine pacing = open(rules);
+        for (String name : names) {
+            pacing.countImpression(name, NOW);
+        }
+
+        // the first placement no longer has a rule, its slot is freed on open
+        rules.remove(names[0]);
+        pacing = open(rules);
+
+        assertEquals(PacingEngine.CAPPED, pacing.check(names[1], NOW + 1));
+        assertEquals(PacingEngine.CAPPED, pacing.check(names[2], NOW + 1));
+
+        // the cluster is consistent: new impressions land in the existing slots
+        pacing.countImpression(names[2], NOW + HOUR);
+        assertEquals(PacingEngine.CAPPED, pacing.check(names[2], NOW + HOUR + 1));
+        assertEquals(PacingEngine.CAPPED, open(rules).check(names[1], NOW + 2));
+
+        // a rule added back starts from scratch
+        rules.put(names[0], new PacingEngine.Rule(1, HOUR, 0));
+        assertEquals(PacingEngine.ALLOWED, open(rules).check(names[0], NOW + 1));
+    }
+
+    @Test
+    public void resetsAnUnknownFile() throws IOException {
+        FileOutputStream out = new FileOutputStream(fFile);
+        out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17 });
+        out.close();
+
+        PacingEngine pacing = open(rules("level", new PacingEngine.Rule(1, HOUR, 0)));
+        assertEquals(PacingEngine.ALLOWED, pacing.check("level", NOW));
+
+        pacing.countImpression("level", NOW);
+        assertEquals(PacingEngine.CAPPED, pacing.check("level", NOW));
+    }
+
+    @Test
+    public void hashesAreNeverTheFreeSlotMarker() {
+        assertNotEquals(0, PacingEngine.hash(""));
+        assertNotEquals(PacingEngine.hash("level1"), PacingEngine.hash("level2"));
+    }
+}
@@ -0,0 +1,247 @@
+//
+//  RequestRegistryTest.java
+//  Supersonic plugin tests
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.naef.jnlua.LuaState;
+
+public class RequestRegistryTest {
+    // Records the listener calls instead of going through Lua
+    private static class RecordingListeners implements RequestRegistry.Listeners {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void call(LuaState L, int ref, AdEvent event, int requestId, LuaEventTables tables) throws Exception {
+            calls.add(ref + ":" + requestId + ":" + event.phase.luaName);
+        }
+
+        @Override
+        public void release(LuaState L, int ref) {
+            calls.add(ref + ":released");
+        }
+    }
+
+    private static final EventDispatcher.Target DETACHED = new EventDispatcher.Target() {
+        @Override
+        public boolean isAttached() {
+            return false;
+        }
+
+        @Override
+        public void scheduleDrain() {
+        }
+
+        @Override
+        public void deliver(LuaState L, AdEvent event) {
+        }
+    };
+
+    private EventDispatcher fEvents;
+    private RecordingListeners fListeners;
+    private RequestRegistry fRequests;
+
+    @Before
+    public void setUp() {
+        fEvents = new EventDispatcher(DETACHED, null);
+        fListeners = new RecordingListeners();
+        fRequests = new RequestRegistry(fEvents, fListeners);
+    }
+
+    private boolean deliver(AdPhase phase, AdType type) {
+        return fRequests.deliver(null, new AdEvent().set(phase, type, false, null), null);
+    }
+
+    private boolean deliverShowFailure(AdType type) {
+        AdEvent event = new AdEvent().set(AdPhase.FAILED, type, true, "capped");
+        event.showFailure = true;
+        return fRequests.deliver(null, event, null);
+    }
+
+    private void assertCalls(String... calls) {
+        assertEquals(Arrays.asList(calls), fListeners.calls);
+        fListeners.calls.clear();
+    }
+
+    @Test
+    public void leavesEventsWithoutRequestsToTheInitListener() {
+        assertFalse(deliver(AdPhase.LOADED, AdType.INTERSTITIAL));
+        assertFalse(deliver(AdPhase.INIT, null));
+
+        fRequests.register(10, AdType.INTERSTITIAL, false);
+        assertFalse(deliver(AdPhase.LOADED, AdType.REWARDED_VIDEO));
+        assertFalse(deliver(AdPhase.INIT, null));
+        assertCalls();
+    }
+
+    @Test
+    public void answersLoadsWithLoadedAndEndsThem() {
+        int first = fRequests.register(10, AdType.INTERSTITIAL, false);
+        int second = fRequests.register(11, AdType.INTERSTITIAL, false);
+
+        assertTrue(deliver(AdPhase.LOADED, AdType.INTERSTITIAL));
+        assertCalls("10:" + first + ":loaded", "10:released", "11:" + second + ":loaded", "11:released");
+        assertEquals(0, fRequests.size());
+
+        assertFalse(deliver(AdPhase.LOADED, AdType.INTERSTITIAL));
+    }
+
+    @Test
+    public void sendsShowEventsToTheShowUntilClosed() {
+        int id = fRequests.register(20, AdType.REWARDED_VIDEO, true);
+
+        assertTrue(deliver(AdPhase.DISPLAYED, AdType.REWARDED_VIDEO));
+        assertTrue(deliver(AdPhase.PLAYBACK_BEGAN, AdType.REWARDED_VIDEO));
+        assertTrue(deliver(AdPhase.REWARDED, AdType.REWARDED_VIDEO));
+        assertEquals(1, fRequests.size());
+        assertTrue(deliver(AdPhase.CLOSED, AdType.REWARDED_VIDEO));
+        assertCalls("20:" + id + ":displayed", "20:" + id + ":playbackBegan", "20:" + id + ":rewarded", "20:" + id + ":closed", "20:released");
+        assertEquals(0, fRequests.size());
+
+        // a 'loaded' never answers a show
+        fRequests.register(21, AdType.REWARDED_VIDEO, true);
+        assertFalse(deliver(AdPhase.LOADED, AdType.REWARDED_VIDEO));
+    }
+
+    @Test
+    public void sendsShowFailuresToShowsAndOtherFailuresToLoads() {
+        int load = fRequests.register(10, AdType.INTERSTITIAL, false);
+        int show = fRequests.register(20, AdType.INTERSTITIAL, true);
+
+        // a failed load leaves the show alone
+        assertTrue(deliver(AdPhase.FAILED, AdType.INTERSTITIAL));
+        assertCalls("10:" + load + ":failed", "10:released");
+        assertEquals(1, fRequests.size());
+
+        assertTrue(deliverShowFailure(AdType.INTERSTITIAL));
+        assertCalls("20:" + show + ":failed", "20:released");
+        assertEquals(0, fRequests.size());
+    }
+
+    @Test
+    public void endsAFailedRewardedVideoShow() {
+        int failed = fRequests.register(20, AdType.REWARDED_VIDEO, true);
+
+        assertTrue(deliverShowFailure(AdType.REWARDED_VIDEO));
+        assertCalls("20:" + failed + ":failed", "20:released");
+        assertEquals(0, fRequests.size());
+
+        // the next show gets its own events, none reach the failed one
+        int next = fRequests.register(21, AdType.REWARDED_VIDEO, true);
+        assertTrue(deliver(AdPhase.DISPLAYED, AdType.REWARDED_VIDEO));
+        assertTrue(deliver(AdPhase.REWARDED, AdType.REWARDED_VIDEO));
+        assertTrue(deliver(AdPhase.CLOSED, AdType.REWARDED_VIDEO));
+        assertCalls("21:" + next + ":displayed", "21:" + next + ":rewarded", "21:" + next + ":closed", "21:released");
+    }
+
+    @Test
+    public void keepsTheShowThroughAvailabilityChanges() {
+        int show = fRequests.register(20, AdType.REWARDED_VIDEO, true);
+
+        // the video started, the SDK reports that no other one is available
+        assertTrue(deliver(AdPhase.PLAYBACK_BEGAN, AdType.REWARDED_VIDEO));
+        AdEvent noFill = new AdEvent().set(AdPhase.FAILED, AdType.REWARDED_VIDEO, true, "noFill");
+        assertFalse(fRequests.deliver(null, noFill, null));
+        assertEquals(1, fRequests.size());
+
+        assertTrue(deliver(AdPhase.REWARDED, AdType.REWARDED_VIDEO));
+        assertTrue(deliver(AdPhase.CLOSED, AdType.REWARDED_VIDEO));
+        assertCalls("20:" + show + ":playbackBegan", "20:" + show + ":rewarded", "20:" + show + ":closed", "20:released");
+    }
+
+    @Test
+    public void doesNotAnswerRequestsMadeByItsListeners() {
+        final RequestRegistry[] requests = new RequestRegistry[1];
+        final List<Integer> reloads = new ArrayList<>();
+        requests[0] = new RequestRegistry(fEvents, new RecordingListeners() {
+            @Override
+            public void call(LuaState L, int ref, AdEvent event, int requestId, LuaEventTables tables) throws Exception {
+                super.call(L, ref, event, requestId, tables);
+                // the listener loads the next ad straight away
+                if (ref < 20) {
+                    reloads.add(requests[0].register(ref + 10, AdType.INTERSTITIAL, false));
+                }
+            }
+        });
+
+        requests[0].register(10, AdType.INTERSTITIAL, false);
+        int second = requests[0].register(11, AdType.INTERSTITIAL, false);
+
+        assertTrue(requests[0].deliver(null, new AdEvent().set(AdPhase.LOADED, AdType.INTERSTITIAL, false, null), null));
+        assertEquals(2, reloads.size());
+        assertTrue(reloads.get(0) > second);
+        assertEquals(2, requests[0].size());
+
+        // the next event answers them
+        assertTrue(requests[0].deliver(null, new AdEvent().set(AdPhase.LOADED, AdType.INTERSTITIAL, false, null), null));
+        assertEquals(0, requests[0].size());
+        assertEquals(2, reloads.size());
+    }
+
+    @Test
+    public void letsFinalEventsOfPendingRequestsPastTheFilter() {
+        fEvents.setFilter(0);
+        assertFalse(fEvents.wants(AdPhase.LOADED, AdType.INTERSTITIAL));
+
+        fRequests.register(10, AdType.INTERSTITIAL, false);
+        fRequests.register(20, AdType.REWARDED_VIDEO, true);
+
+        assertTrue(fEvents.wants(AdPhase.LOADED, AdType.INTERSTITIAL));
+        assertTrue(fEvents.wants(AdPhase.FAILED, AdType.INTERSTITIAL));
+        assertTrue(fEvents.wants(AdPhase.CLOSED, AdType.REWARDED_VIDEO));
+        assertTrue(fEvents.wants(AdPhase.FAILED, AdType.REWARDED_VIDEO));
+        assertFalse(fEvents.wants(AdPhase.CLOSED, AdType.INTERSTITIAL));
+        assertFalse(fEvents.wants(AdPhase.LOADED, AdType.REWARDED_VIDEO));
+        assertFalse(fEvents.wants(AdPhase.REWARDED, AdType.REWARDED_VIDEO));
+        assertFalse(fEvents.passesFilter(AdPhase.LOADED, AdType.INTERSTITIAL));
+
+        // ended requests no longer hold the filter open
+        assertTrue(deliver(AdPhase.LOADED, AdType.INTERSTITIAL));
+        assertFalse(fEvents.wants(AdPhase.LOADED, AdType.INTERSTITIAL));
+        assertTrue(fEvents.wants(AdPhase.CLOSED, AdType.REWARDED_VIDEO));
+
+        fRequests.clear(null);
+        assertFalse(fEvents.wants(AdPhase.CLOSED, AdType.REWARDED_VIDEO));
+    }
+
+    @Test
+    public void releasesEveryListenerOnClear() {
+        fRequests.register(10, AdType.INTERSTITIAL, false);
+        fRequests.register(20, AdType.OFFER_WALL, true);
+
+        fRequests.clear(null);
+
+        assertCalls("10:released", "20:released");
+        assertEquals(0, fRequests.size());
+        assertFalse(deliver(AdPhase.CLOSED, AdType.OFFER_WALL));
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        for (int i = 0; i < 20; i++) {
+            fRequests.register(100 + i, AdType.OFFER_WALL, (i & 1) != 0);
+        }
+
+        assertTrue(deliver(AdPhase.LOADED, AdType.OFFER_WALL));
+        assertEquals(10, fRequests.size());
+        assertTrue(deliver(AdPhase.CLOSED, AdType.OFFER_WALL));
+        assertEquals(0, fRequests.size());
+        assertEquals(40, fListeners.calls.size());
+    }
+}
@@ -0,0 +1,175 @@
+//
+//  RewardLedgerTest.java
+//  Supersonic plugin tests
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RewardLedgerTest {
+    @Rule
+    public final TemporaryFolder fFolder = new TemporaryFolder();
+
+    private File fFile;
+
+    @Before
+    public void setUp() throws IOException {
+        fFile = new File(fFolder.getRoot(), "rewards.log");
+    }
+
+    private static RewardPayload placement(String name) {
+        return new RewardPayload(name, "coins", 10, false, 0, 0, false);
+    }
+
+    // Records the rewards in a fresh ledger and waits until they are on disk
+    private long[] record(RewardPayload... rewards) throws Exception {
+        RewardLedger ledger = new RewardLedger();
+        assertTrue(ledger.open(fFile).isEmpty());
+
+        long[] ids = new long[rewards.length];
+        for (int i = 0; i < rewards.length; i++) {
+            ids[i] = ledger.record(AdType.REWARDED_VIDEO, rewards[i]);
+        }
+        ledger.flush();
+        return ids;
+    }
+
+    @Test
+    public void replaysUnacknowledgedRewardsInOrder() throws Exception {
+        RewardLedger ledger = new RewardLedger();
+        ledger.open(fFile);
+        long first = ledger.record(AdType.REWARDED_VIDEO, placement("first"));
+        long second = ledger.record(AdType.OFFER_WALL, new RewardPayload(null, null, 0, true, 5, 50, true));
+        long third = ledger.record(AdType.REWARDED_VIDEO, placement("third"));
+        ledger.acknowledge(second);
+        ledger.flush();
+
+        List<RewardLedger.Entry> entries = new RewardLedger().open(fFile);
+
+        assertEquals(2, entries.size());
+        assertEquals(first, entries.get(0).id);
+        assertEquals("first", entries.get(0).reward.placementName);
+        assertEquals("coins", entries.get(0).reward.rewardName);
+        assertEquals(10, entries.get(0).reward.rewardAmount);
+        assertEquals(AdType.REWARDED_VIDEO, entries.get(0).type);
+        assertEquals(third, entries.get(1).id);
+        assertEquals("third", entries.get(1).reward.placementName);
+    }
+
+    @Test
+    public void replaysCredits() throws Exception {
+        record(new RewardPayload(null, null, 0, true, 5, 50, true));
+
+        RewardLedger.Entry entry = new RewardLedger().open(fFile).get(0);
+
+        assertEquals(AdType.REWARDED_VIDEO, entry.type);
+        assertTrue(entry.reward.isCredit);
+        assertEquals(5, entry.reward.credits);
+        assertEquals(50, entry.reward.totalCredits);
+        assertTrue(entry.reward.totalCreditsFlag);
+        assertNull(entry.reward.placementName);
+    }
+
+    @Test
+    public void compactsToThePendingRewards() throws Exception {
+        long[] ids = record(placement("a"));
+        long singleRecord = fFile.length();
+
+        RewardLedger ledger = new RewardLedger();
+        ledger.open(fFile);
+        long acknowledged = ledger.record(AdType.REWARDED_VIDEO, placement("a"));
+        ledger.acknowledge(acknowledged);
+        ledger.flush();
+        assertTrue(fFile.length() > singleRecord);
+
+        // the acknowledged reward and its acknowledgement are dropped, ids keep counting up
+        RewardLedger reopened = new RewardLedger();
+        List<RewardLedger.Entry> entries = reopened.open(fFile);
+        assertEquals(1, entries.size());
+        assertEquals(ids[0], entries.get(0).id);
+        assertEquals(singleRecord, fFile.length());
+        assertTrue(reopened.record(AdType.REWARDED_VIDEO, placement("b")) > acknowledged);
+    }
+
+    @Test
+    public void stopsAtATornRecord() throws Exception {
+        long[] ids = record(placement("a"), placement("b"), placement("c"));
+        long recordSize = fFile.length() / 3;
+
+        // the process died in the middle of the third record
+        RandomAccessFile file = new RandomAccessFile(fFile, "rw");
+        file.setLength(fFile.length() - recordSize / 2);
+        file.close();
+
+        List<RewardLedger.Entry> entries = new RewardLedger().open(fFile);
+
+        assertEquals(2, entries.size());
+        assertEquals(ids[0], entries.get(0).id);
+        assertEquals(ids[1], entries.get(1).id);
+        assertEquals(2 * recordSize, fFile.length());
+    }
+
+    @Test
+    public void stopsAtACorruptRecord() throws Exception {
+        long[] ids = record(placement("a"), placement("b"), placement("c"));
+        long recordSize = fFile.length() / 3;
+
+        // flip a byte in the body of the second record, its CRC no longer matches
+        RandomAccessFile file = new RandomAccessFile(fFile, "rw");
+        long offset = 2 * recordSize - 10;
+        file.seek(offset);
+        int value = file.read();
+        file.seek(offset);
+        file.write(value ^ 0xff);
+        file.close();
+
+        List<RewardLedger.Entry> entries = new RewardLedger().open(fFile);
+
+        assertEquals(1, entries.size());
+        assertEquals(ids[0], entries.get(0).id);
+    }
+
+    @Test
+    public void cutsLongNamesAtACharacterBoundary() throws Exception {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < RewardLedger.MAX_STRING_SIZE; i++) {
+            name.append('\u00e9');    // two bytes in UTF-8
+        }
+        record(placement(name.toString()));
+
+        String replayed = new RewardLedger().open(fFile).get(0).reward.placementName;
+
+        assertEquals(RewardLedger.MAX_STRING_SIZE / 2, replayed.length());
+        assertTrue(name.toString().startsWith(replayed));
+        assertFalse(replayed.contains("\ufffd"));
+    }
+
+    @Test
+    public void keepsNamesThatFit() throws Exception {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < RewardLedger.MAX_STRING_SIZE; i++) {
+            name.append('x');
+        }
+        record(placement(name.toString()));
+
+        assertEquals(name.toString(), new RewardLedger().open(fFile).get(0).reward.placementName);
+    }
+}
@@ -0,0 +1,102 @@
+//
+//  RuntimeRegistryTest.java
+//  Supersonic plugin tests
+//
+//  Copyright (c) 2016 Corona Labs. All rights reserved.
+//
+
+// @formatter:off
+
+package plugin.supersonic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RuntimeRegistryTest {
+    @Rule
+    public final TemporaryFolder fFolder = new TemporaryFolder();
+
+    private File fFile;
+    private AdMetrics fMetrics;
+    private RewardLedger fLedger;
+    private RuntimeRegistry fRuntimes;
+
+    @Before
+    public void setUp() throws IOException {
+        fFile = new File(fFolder.getRoot(), "rewards.log");
+        fLedger = new RewardLedger();
+        fMetrics = new AdMetrics();
+        fRuntimes = new RuntimeRegistry(fMetrics, fLedger);
+    }
+
+    // Replays the rewards a previous session left in the ledger, with the given filter on the waiting runtime
+    private static long noEvents() {
+        return EventDispatcher.filterMask(null, new boolean[AdPhase.VALUES.length]);
+    }
+
+    private List<RewardLedger.Entry> replayInto(long filter) throws Exception {
+        RewardLedger previous = new RewardLedger();
+        previous.open(fFile);
+        previous.record(AdType.REWARDED_VIDEO, new RewardPayload("level", "coins", 10, false, 0, 0, false));
+        previous.flush();
+
+        fRuntimes.events(null).setFilter(filter);
+        new RewardDispatcher(fRuntimes, fLedger).replay(fLedger.open(fFile));
+        fLedger.flush();
+
+        return new RewardLedger().open(fFile);
+    }
+
+    @Test
+    public void acknowledgesReplaysNoRuntimeWants() throws Exception {
+        List<RewardLedger.Entry> left = replayInto(noEvents());
+
+        assertEquals(0, left.size());
+        assertEquals(0, fRuntimes.events(null).depth());
+        assertEquals(1, fRuntimes.events(null).filteredEvents());
+    }
+
+    @Test
+    public void keepsReplaysUntilTheListenerHasThem() throws Exception {
+        List<RewardLedger.Entry> left = replayInto(EventDispatcher.ALL_EVENTS);
+
+        // waiting for a runtime to attach
+        assertEquals(1, left.size());
+        assertEquals(1, fRuntimes.events(null).depth());
+    }
+
+    @Test
+    public void countsFilteredEventsInTheMetrics() {
+        fRuntimes.events(null).setFilter(noEvents());
+
+        fRuntimes.dispatch(AdPhase.LOADED, AdType.INTERSTITIAL);
+        fRuntimes.dispatchAvailability(AdPhase.FAILED, AdType.REWARDED_VIDEO, true, "noFill");
+        fRuntimes.dispatchShowFailure(AdType.OFFER_WALL, "error");
+        // rewards stop at the listener's check, before anything is dispatched
+        new RewardDispatcher(fRuntimes, fLedger).accepts(AdType.REWARDED_VIDEO);
+
+        assertEquals(1, fMetrics.count(AdType.INTERSTITIAL, AdPhase.LOADED));
+        assertEquals(1, fMetrics.count(AdType.REWARDED_VIDEO, AdPhase.FAILED));
+        assertEquals(1, fMetrics.count(AdType.OFFER_WALL, AdPhase.FAILED));
+        assertEquals(1, fMetrics.count(AdType.REWARDED_VIDEO, AdPhase.REWARDED));
+        assertEquals(0, fRuntimes.events(null).depth());
+    }
+
+    @Test
+    public void countsDeliveredEventsOnce() {
+        fRuntimes.dispatch(AdPhase.CLOSED, AdType.INTERSTITIAL);
+        fRuntimes.dispatchAvailability(AdPhase.LOADED, AdType.OFFER_WALL, false, null);
+
+        assertEquals(1, fMetrics.count(AdType.INTERSTITIAL, AdPhase.CLOSED));
+        assertEquals(1, fMetrics.count(AdType.OFFER_WALL, AdPhase.LOADED));
+        assertEquals(2, fRuntimes.events(null).depth());
+    }
+}